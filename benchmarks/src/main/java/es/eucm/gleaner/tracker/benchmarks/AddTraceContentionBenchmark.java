@@ -0,0 +1,102 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.benchmarks;
+
+import es.eucm.gleaner.tracker.CsvTracker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Several producer threads adding traces to the same tracker while a
+ * separate thread, standing for the game loop, keeps flushing. Compare the
+ * total throughput of each method to see how adding traces scales with the
+ * number of producers
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AddTraceContentionBenchmark {
+
+	private static final String TRACE = "1453993834000,zone,zone1";
+
+	private CsvTracker tracker;
+
+	private Thread gameLoop;
+
+	private volatile boolean running;
+
+	@Setup
+	public void setUp() {
+		tracker = new CsvTracker(new MemoryStorage());
+		tracker.start();
+		running = true;
+		gameLoop = new Thread("game-loop") {
+			@Override
+			public void run() {
+				while (running) {
+					tracker.requestFlush();
+					tracker.update(0);
+				}
+			}
+		};
+		gameLoop.start();
+	}
+
+	@TearDown
+	public void tearDown() throws InterruptedException {
+		running = false;
+		gameLoop.join();
+	}
+
+	@Benchmark
+	@Threads(1)
+	public void producers1() {
+		tracker.addTrace(TRACE);
+	}
+
+	@Benchmark
+	@Threads(2)
+	public void producers2() {
+		tracker.addTrace(TRACE);
+	}
+
+	@Benchmark
+	@Threads(4)
+	public void producers4() {
+		tracker.addTrace(TRACE);
+	}
+
+	@Benchmark
+	@Threads(8)
+	public void producers8() {
+		tracker.addTrace(TRACE);
+	}
+}
@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.benchmarks;
+
+import es.eucm.gleaner.tracker.AbstractTracker;
+import es.eucm.gleaner.tracker.CsvTracker;
+import es.eucm.gleaner.tracker.TraceEvent;
+import es.eucm.gleaner.tracker.XAPITracker;
+import es.eucm.gleaner.tracker.XAPITracker.Accessible;
+import es.eucm.gleaner.tracker.XAPITracker.Completable;
+import es.eucm.gleaner.tracker.codec.ContentCodec;
+import es.eucm.gleaner.tracker.codec.DeflateCodec;
+import es.eucm.gleaner.tracker.codec.GzipCodec;
+import es.eucm.gleaner.tracker.codec.XAPIDictionary;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * CPU cost of compressing a serialized batch with each codec. The
+ * compression ratio of each combination is printed at setup
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CompressionBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int batchSize;
+
+	@Param({ "csv", "xapi" })
+	public String format;
+
+	@Param({ "gzip", "deflate", "deflate-dictionary" })
+	public String codecName;
+
+	private ContentCodec codec;
+
+	private TraceBuffer batch = new TraceBuffer();
+
+	private TraceBuffer encoded = new TraceBuffer();
+
+	@Setup
+	public void setUp() {
+		final ArrayList<String> traces = new ArrayList<String>();
+		AbstractTracker tracker;
+		if ("csv".equals(format)) {
+			CsvTracker csvTracker = new CsvTracker(new MemoryStorage()) {
+				@Override
+				public void addTrace(TraceEvent event, int priority) {
+					traces.add(event.toString());
+				}
+			};
+			csvTracker.start();
+			for (int i = 0; i < batchSize; i++) {
+				if (i % 2 == 0) {
+					csvTracker.zone("zone" + i);
+				} else {
+					csvTracker.click(i, i, "target" + i);
+				}
+			}
+			tracker = csvTracker;
+		} else {
+			XAPITracker xapiTracker = new XAPITracker(new MemoryStorage()) {
+				@Override
+				public void addTrace(TraceEvent event, int priority) {
+					traces.add(event.toString());
+				}
+			};
+			xapiTracker.start();
+			for (int i = 0; i < batchSize; i++) {
+				if (i % 2 == 0) {
+					xapiTracker.accessed("zone" + i, Accessible.ZONE);
+				} else {
+					xapiTracker.completed("level" + i, Completable.LEVEL,
+							true, true, i);
+				}
+			}
+			tracker = xapiTracker;
+		}
+		tracker.serialize(traces, batch);
+
+		if ("gzip".equals(codecName)) {
+			codec = new GzipCodec();
+		} else if ("deflate".equals(codecName)) {
+			codec = new DeflateCodec();
+		} else {
+			codec = new DeflateCodec(Deflater.DEFAULT_COMPRESSION,
+					XAPIDictionary.get());
+		}
+
+		codec.encode(batch, encoded);
+		System.out.printf("%n%s %s x%d: %d -> %d bytes (%.1fx)%n", codecName,
+				format, batchSize, batch.size(), encoded.size(), batch.size()
+						/ (double) encoded.size());
+	}
+
+	@TearDown
+	public void tearDown() {
+		codec.dispose();
+	}
+
+	@Benchmark
+	public TraceBuffer encode() {
+		encoded.reset();
+		codec.encode(batch, encoded);
+		return encoded;
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.benchmarks;
+
+import es.eucm.gleaner.tracker.CsvTracker;
+import es.eucm.gleaner.tracker.TraceEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building CSV traces. Each operation emits a batch of traces; the
+ * traces are handed to a {@link Blackhole} instead of the queue, so only
+ * building them (and formatting them, with {@link #format}) is measured (see
+ * {@link FlushCycleBenchmark} for the queue)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CsvTrackerBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int batchSize;
+
+	/**
+	 * If the traces are also formatted, as they would be in the flush
+	 */
+	@Param({ "false", "true" })
+	public boolean format;
+
+	private CsvTracker tracker;
+
+	@Setup
+	public void setUp(final Blackhole blackhole) {
+		tracker = new CsvTracker(new MemoryStorage()) {
+			@Override
+			public void addTrace(TraceEvent event, int priority) {
+				blackhole.consume(format ? event.toString() : event);
+			}
+		};
+		tracker.start();
+	}
+
+	@Benchmark
+	public void traceValues() {
+		for (int i = 0; i < batchSize; i++) {
+			tracker.trace("random", "value, with comma", "\"quoted\"");
+		}
+	}
+
+	@Benchmark
+	public void zone() {
+		for (int i = 0; i < batchSize; i++) {
+			tracker.zone("zone1");
+		}
+	}
+
+	@Benchmark
+	public void click() {
+		for (int i = 0; i < batchSize; i++) {
+			tracker.click(i, 200.5f, "object1");
+		}
+	}
+
+	@Benchmark
+	public void increase() {
+		for (int i = 0; i < batchSize; i++) {
+			tracker.increase("score", i);
+		}
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.benchmarks;
+
+import es.eucm.gleaner.tracker.CsvTracker;
+import es.eucm.gleaner.tracker.XAPITracker;
+import es.eucm.gleaner.tracker.XAPITracker.Accessible;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full cycle for a batch of traces: build and queue them, flush them in the
+ * next update and send them to an in-memory storage that acknowledges at once
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FlushCycleBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int batchSize;
+
+	private CsvTracker csvTracker;
+
+	private XAPITracker xapiTracker;
+
+	@Setup
+	public void setUp() {
+		csvTracker = new CsvTracker(new MemoryStorage());
+		xapiTracker = new XAPITracker(new MemoryStorage());
+		csvTracker.start();
+		xapiTracker.start();
+	}
+
+	@Benchmark
+	public void csv() {
+		for (int i = 0; i < batchSize; i++) {
+			csvTracker.zone("zone1");
+		}
+		csvTracker.requestFlush();
+		csvTracker.update(0);
+	}
+
+	@Benchmark
+	public void xapi() {
+		for (int i = 0; i < batchSize; i++) {
+			xapiTracker.accessed("zone1", Accessible.ZONE);
+		}
+		xapiTracker.requestFlush();
+		xapiTracker.update(0);
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.benchmarks;
+
+import com.badlogic.gdx.files.FileHandle;
+import es.eucm.gleaner.tracker.journal.MappedJournal;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of journaling a trace, as paid by the tracker for each queued trace.
+ * The checkpoint advances every 4096 traces, so segments roll and are
+ * deleted as in a running game
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class JournalBenchmark {
+
+	private static final String CSV = "1433152800000,click,100.0,200.0,object1";
+
+	private static final String XAPI = "{\"actor\":{\"mbox\":\"mailto:user@example.com\"},"
+			+ "\"verb\":{\"id\":\"https://w3id.org/xapi/seriousgames/verbs/accessed\"},"
+			+ "\"object\":{\"id\":\"http://example.com/game/zone1\",\"definition\":"
+			+ "{\"type\":\"https://w3id.org/xapi/seriousgames/activity-types/zone\"}},"
+			+ "\"timestamp\":\"2015-06-01T10:00:00Z\"}";
+
+	@Param({ "csv", "xapi" })
+	public String format;
+
+	private String trace;
+
+	private File directory;
+
+	private MappedJournal journal;
+
+	@Setup
+	public void setUp() throws IOException {
+		trace = "csv".equals(format) ? CSV : XAPI;
+		directory = Files.createTempDirectory("journal").toFile();
+		journal = new MappedJournal(new FileHandle(directory));
+	}
+
+	@TearDown
+	public void tearDown() {
+		journal.close();
+		new FileHandle(directory).deleteDirectory();
+	}
+
+	@Benchmark
+	public long append() {
+		journal.append(trace, 1);
+		long position = journal.position();
+		if ((position & 4095) == 0) {
+			journal.checkpoint(position);
+		}
+		return position;
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.benchmarks;
+
+import com.badlogic.gdx.Net.HttpResponse;
+import com.badlogic.gdx.Net.HttpResponseListener;
+import com.badlogic.gdx.files.FileHandle;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+import es.eucm.gleaner.tracker.storage.LocalStorage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sustained write throughput of {@link LocalStorage}, through the stream and
+ * through the file channel. Each operation writes 1 MiB in 16 KiB batches
+ * and waits for all of them to be acknowledged, so the score in ops/s reads
+ * as MiB/s. Files are rotated and deleted every 256 MiB
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LocalStorageBenchmark {
+
+	private static final int BATCH_SIZE = 16 * 1024;
+
+	private static final int BATCHES = 64;
+
+	private static final String CSV = "1433152800000,click,100.0,200.0,object1\n";
+
+	@Param({ "stream", "channel" })
+	public String backend;
+
+	private File directory;
+
+	private LocalStorage storage;
+
+	private TraceBuffer[] batches = new TraceBuffer[BATCHES];
+
+	private final Semaphore acknowledged = new Semaphore(0);
+
+	private final HttpResponseListener listener = new HttpResponseListener() {
+		@Override
+		public void handleHttpResponse(HttpResponse httpResponse) {
+			acknowledged.release();
+		}
+
+		@Override
+		public void failed(Throwable t) {
+			acknowledged.release();
+		}
+
+		@Override
+		public void cancelled() {
+			acknowledged.release();
+		}
+	};
+
+	@Setup
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("storage").toFile();
+		storage = new LocalStorage(new FileHandle(new File(directory,
+				"traces.csv")));
+		storage.setFileChannel("channel".equals(backend));
+		storage.setRotation(256 * 1024 * 1024, 0, 1, false);
+		for (int i = 0; i < BATCHES; i++) {
+			TraceBuffer batch = new TraceBuffer();
+			while (batch.size() + CSV.length() <= BATCH_SIZE) {
+				batch.append(CSV);
+			}
+			while (batch.size() < BATCH_SIZE) {
+				batch.append('\n');
+			}
+			batches[i] = batch;
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		storage.close();
+		new FileHandle(directory).deleteDirectory();
+	}
+
+	@Benchmark
+	public void write() throws InterruptedException {
+		for (int i = 0; i < BATCHES; i++) {
+			storage.send(batches[i], listener);
+		}
+		acknowledged.acquire(BATCHES);
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.benchmarks;
+
+import com.badlogic.gdx.Net.HttpResponseListener;
+import es.eucm.gleaner.tracker.AbstractTracker;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+import es.eucm.gleaner.tracker.http.SimpleHttpResponse;
+import es.eucm.gleaner.tracker.storage.AbstractStorage;
+
+/**
+ * Storage that acknowledges every request immediately, so benchmarks only
+ * measure the tracker itself
+ */
+public class MemoryStorage extends AbstractStorage {
+
+	public long sentBytes;
+
+	@Override
+	public void setTracker(AbstractTracker tracker) {
+	}
+
+	@Override
+	public void start(HttpResponseListener startListener) {
+		startListener.handleHttpResponse(new SimpleHttpResponse(
+				"{\"actor\":{\"mbox\":\"user@example.com\"},\"objectId\":\"http://example.com/game\"}",
+				200));
+	}
+
+	@Override
+	public void send(String data, HttpResponseListener flushListener) {
+		sentBytes += data.length();
+		flushListener.handleHttpResponse(new SimpleHttpResponse("", 204));
+	}
+
+	@Override
+	public void send(TraceBuffer data, HttpResponseListener flushListener) {
+		sentBytes += data.size();
+		flushListener.handleHttpResponse(new SimpleHttpResponse("", 204));
+	}
+
+	@Override
+	public void close() {
+	}
+}
@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.benchmarks;
+
+import es.eucm.gleaner.tracker.CsvTracker;
+import es.eucm.gleaner.tracker.TraceEvent;
+import es.eucm.gleaner.tracker.XAPITracker;
+import es.eucm.gleaner.tracker.XAPITracker.Accessible;
+import es.eucm.gleaner.tracker.XAPITracker.Completable;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of serializing a batch of already built traces into the payload sent
+ * to the storage. The buffer is reused, as the tracker does with its pool
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SerializeBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int batchSize;
+
+	private CsvTracker csvTracker;
+
+	private XAPITracker xapiTracker;
+
+	private ArrayList<String> csvTraces = new ArrayList<String>();
+
+	private ArrayList<String> xapiStatements = new ArrayList<String>();
+
+	private TraceBuffer buffer = new TraceBuffer();
+
+	@Setup
+	public void setUp() {
+		csvTracker = new CsvTracker(new MemoryStorage()) {
+			@Override
+			public void addTrace(TraceEvent event, int priority) {
+				csvTraces.add(event.toString());
+			}
+		};
+		xapiTracker = new XAPITracker(new MemoryStorage()) {
+			@Override
+			public void addTrace(TraceEvent event, int priority) {
+				xapiStatements.add(event.toString());
+			}
+		};
+		csvTracker.start();
+		xapiTracker.start();
+		for (int i = 0; i < batchSize; i++) {
+			if (i % 2 == 0) {
+				csvTracker.zone("zone" + i);
+				xapiTracker.accessed("zone" + i, Accessible.ZONE);
+			} else {
+				csvTracker.click(i, i, "target" + i);
+				xapiTracker.completed("level" + i, Completable.LEVEL, true,
+						true, i);
+			}
+		}
+	}
+
+	@Benchmark
+	public TraceBuffer csv() {
+		buffer.reset();
+		csvTracker.serialize(csvTraces, buffer);
+		return buffer;
+	}
+
+	@Benchmark
+	public TraceBuffer xapi() {
+		buffer.reset();
+		xapiTracker.serialize(xapiStatements, buffer);
+		return buffer;
+	}
+}
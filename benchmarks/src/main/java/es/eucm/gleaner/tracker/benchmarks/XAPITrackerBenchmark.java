@@ -0,0 +1,105 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.benchmarks;
+
+import es.eucm.gleaner.tracker.TraceEvent;
+import es.eucm.gleaner.tracker.XAPITracker;
+import es.eucm.gleaner.tracker.XAPITracker.Accessible;
+import es.eucm.gleaner.tracker.XAPITracker.Alternative;
+import es.eucm.gleaner.tracker.XAPITracker.Completable;
+import es.eucm.gleaner.tracker.XAPITracker.Verb;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of building xAPI statements. As in {@link CsvTrackerBenchmark},
+ * statements go to a {@link Blackhole} instead of the queue
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class XAPITrackerBenchmark {
+
+	@Param({ "10", "1000", "100000" })
+	public int batchSize;
+
+	/**
+	 * If the traces are also formatted, as they would be in the flush
+	 */
+	@Param({ "false", "true" })
+	public boolean format;
+
+	private XAPITracker tracker;
+
+	@Setup
+	public void setUp(final Blackhole blackhole) {
+		tracker = new XAPITracker(new MemoryStorage()) {
+			@Override
+			public void addTrace(TraceEvent event, int priority) {
+				blackhole.consume(format ? event.toString() : event);
+			}
+		};
+		tracker.start();
+	}
+
+	@Benchmark
+	public void accessed() {
+		for (int i = 0; i < batchSize; i++) {
+			tracker.accessed("menu", Accessible.SCREEN);
+		}
+	}
+
+	@Benchmark
+	public void completed() {
+		for (int i = 0; i < batchSize; i++) {
+			tracker.completed("level1", Completable.LEVEL, true, true, 0.75f);
+		}
+	}
+
+	@Benchmark
+	public void selectedWithExtensions() {
+		for (int i = 0; i < batchSize; i++) {
+			tracker.setPosition(i, 20.5f, 0);
+			tracker.setHealth(0.5f);
+			tracker.setVar("coins", i);
+			tracker.selected("question1", Alternative.QUESTION, "answer2");
+		}
+	}
+
+	@Benchmark
+	public void selectedWithStatement() {
+		for (int i = 0; i < batchSize; i++) {
+			tracker.statement().position(i, 20.5f, 0).health(0.5f)
+					.extension("coins", i).response("answer2")
+					.send(Verb.SELECTED, "question1", Alternative.QUESTION);
+		}
+	}
+}
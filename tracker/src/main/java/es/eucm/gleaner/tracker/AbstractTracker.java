@@ -19,73 +19,288 @@ import com.badlogic.gdx.Net.HttpResponse;
 import com.badlogic.gdx.Net.HttpResponseListener;
 import com.badlogic.gdx.net.HttpRequestBuilder;
 import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
 import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.Pool.Poolable;
+import es.eucm.gleaner.tracker.atomic.AtomicInteger;
+import es.eucm.gleaner.tracker.atomic.AtomicLong;
+import es.eucm.gleaner.tracker.format.CsvSerializer;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+import es.eucm.gleaner.tracker.format.TraceSerializer;
+import es.eucm.gleaner.tracker.journal.TraceJournal;
+import es.eucm.gleaner.tracker.queue.DroppedTraces;
+import es.eucm.gleaner.tracker.queue.OverflowPolicy;
+import es.eucm.gleaner.tracker.queue.SegmentList;
+import es.eucm.gleaner.tracker.queue.TraceQueue;
+import es.eucm.gleaner.tracker.queue.TraceSegment;
+import es.eucm.gleaner.tracker.retry.Backoff;
+import es.eucm.gleaner.tracker.retry.CircuitState;
+import es.eucm.gleaner.tracker.storage.AbstractStorage;
 import es.eucm.gleaner.tracker.storage.Storage;
 
-import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 
 /**
  * @author Ángel Serrano Laguna
  */
 public abstract class AbstractTracker {
 
+	public static final int PRIORITY_LOW = 0;
+
+	public static final int PRIORITY_NORMAL = 1;
+
+	public static final int PRIORITY_HIGH = 2;
+
+	/**
+	 * Milliseconds {@link #close()} waits for the traces to be sent
+	 */
+	public static final long CLOSE_TIMEOUT = 5000;
+
+	/**
+	 * Traces that can be added before the flush path has to make room in
+	 * {@link #incoming}
+	 */
+	private static final int INCOMING_CAPACITY = 4096;
+
+	/**
+	 * Traces that can wait for the listeners that are not
+	 * {@link Delivery#SYNC}
+	 */
+	private static final int LISTENER_CAPACITY = 1024;
+
 	private Storage storage;
 
-	private boolean sending;
+	private TraceSerializer serializer;
 
 	private boolean connected;
 
 	private boolean connecting;
 
-	private boolean flushRequested;
+	private volatile boolean flushRequested;
+
+	/**
+	 * Wakes the {@link FlushScheduler} updating the tracker instead of
+	 * {@link #update(float)}, if any
+	 */
+	private volatile Runnable scheduler;
 
-	private FlushListener flushListener = new FlushListener();
+	/**
+	 * The thread that last updated the tracker
+	 */
+	private volatile Object updater;
 
 	private StartListener startListener;
 
-	private Array<TraceListener> listeners = new Array<TraceListener>(3);
+	private final ListenerDispatcher listeners = new ListenerDispatcher(
+			LISTENER_CAPACITY);
+
+	/**
+	 * Traces added by any thread, waiting to be moved to {@link #queue}. Never
+	 * locked, so any thread can add traces
+	 */
+	private TraceQueue<Object> incoming;
+
+	/**
+	 * Queue of traces that will be sent in the next flush. Like all the
+	 * batches, only accessed holding the tracker's lock
+	 */
+	private SegmentList queue;
 
 	/**
-	 * Queue of traces that will be sent in the next flush
+	 * Batches sent to the storage but not yet acknowledged by it
 	 */
-	private ArrayList<String> queue;
+	private Array<FlushListener> inFlight = new Array<FlushListener>(false, 4);
 
 	/**
-	 * Traces sent to the server but yet not acknowledged by it
+	 * Batches whose sending failed, ordered by sequence number. They are sent
+	 * again, before the queue, in the next flush
 	 */
-	private ArrayList<String> sent;
+	private Array<FlushListener> failed = new Array<FlushListener>();
+
+	private final Pool<FlushListener> batches = new Pool<FlushListener>() {
+		@Override
+		protected FlushListener newObject() {
+			return new FlushListener();
+		}
+	};
+
+	private int maxInFlight = 1;
+
+	private long nextSequence;
+
+	/**
+	 * Number of flushes so far. Batches failing during a flush are not sent
+	 * again in the same flush
+	 */
+	private int flushes;
+
+	private final Pool<TraceSegment> segments = new Pool<TraceSegment>(4, 64) {
+		@Override
+		protected TraceSegment newObject() {
+			return new TraceSegment();
+		}
+	};
+
+	private final Pool<TraceBuffer> buffers = new Pool<TraceBuffer>(2, 4) {
+		@Override
+		protected TraceBuffer newObject() {
+			return new TraceBuffer();
+		}
+	};
+
+	/**
+	 * Traces held by the tracker (added but not acknowledged by the storage)
+	 * and the sum of their lengths. Updated without locking when traces are
+	 * added
+	 */
+	private final AtomicInteger heldTraces = new AtomicInteger();
+
+	private final AtomicLong heldLength = new AtomicLong();
+
+	/**
+	 * Read without the lock by the threads adding traces
+	 */
+	private volatile int maxTraces = Integer.MAX_VALUE;
+
+	private volatile long maxChars = Long.MAX_VALUE;
+
+	private OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+	private long blockTimeout = 100;
+
+	private final DroppedTraces droppedTraces = new DroppedTraces();
+
+	private TraceJournal journal;
+
+	/**
+	 * Journal position of the first trace in {@link #queue}, or an earlier
+	 * one if traces were dropped from the middle of the queue. Each batch
+	 * takes the range of journal positions from the mark to the next mark
+	 */
+	private long journalMark;
+
+	private final int[] tag = new int[1];
+
+	/**
+	 * Bytes written by {@link TraceSerializer#end(TraceBuffer)}, or -1 if
+	 * still unknown
+	 */
+	private int endSize = -1;
+
+	/**
+	 * Where the traces not sent when closing go, if there is no journal
+	 */
+	private TraceJournal spool;
+
+	private volatile CloseHandle closing;
+
+	private Backoff backoff = new Backoff(1, 30);
+
+	/**
+	 * Seconds to wait before retrying after a failure
+	 */
+	private float retryDelay;
+
+	private boolean storageClosed;
+
+	/**
+	 * Traces in the batches in flight, and the sum of their lengths. Queued
+	 * traces are the held ones that are not in flight
+	 */
+	private volatile int inFlightTraces;
+
+	private volatile long inFlightLength;
 
 	private float nextFlush;
 
 	private float flushInterval = -1;
 
+	/**
+	 * If {@link #flushInterval} elapsed since the last flush
+	 */
+	private boolean flushDue;
+
+	/**
+	 * Set by any thread, read by the one updating the tracker
+	 */
+	private volatile int flushTraces = Integer.MAX_VALUE;
+
+	private volatile long flushChars = Long.MAX_VALUE;
+
+	private float minLinger = 0;
+
+	private float maxLinger = -1;
+
+	/**
+	 * Seconds the queue has had traces waiting
+	 */
+	private float lingered;
+
+	/**
+	 * Sends the traces one per line, as a {@link CsvSerializer}. Subclasses
+	 * overriding the former {@code serialize(ArrayList)} and
+	 * {@code contentType()} must move them to a {@link TraceSerializer},
+	 * passed to another constructor or to {@link #setSerializer}: they are no
+	 * longer called
+	 */
 	public AbstractTracker(Storage storage) {
 		this(storage, -1);
 	}
 
 	/**
+	 * Sends the traces one per line. See {@link #AbstractTracker(Storage)}
+	 * 
 	 * @param flushInterval
 	 *            seconds between flush calls
 	 */
 	public AbstractTracker(Storage storage, float flushInterval) {
+		this(storage, new CsvSerializer(), flushInterval);
+	}
+
+	public AbstractTracker(Storage storage, TraceSerializer serializer) {
+		this(storage, serializer, -1);
+	}
+
+	/**
+	 * @param serializer
+	 *            serializer for the batches of traces sent to the storage
+	 * @param flushInterval
+	 *            seconds between flush calls
+	 */
+	public AbstractTracker(Storage storage, TraceSerializer serializer,
+			float flushInterval) {
 		this.storage = storage;
+		this.serializer = serializer;
 		storage.setTracker(this);
 		this.flushInterval = flushInterval;
 		this.nextFlush = flushInterval;
 		startListener = new StartListener(this);
-		sending = false;
 		connected = false;
 		connecting = false;
-		queue = new ArrayList<String>();
-		sent = new ArrayList<String>();
+		incoming = new TraceQueue<Object>(INCOMING_CAPACITY);
+		queue = new SegmentList(segments);
 	}
 
+	/**
+	 * @return if there are batches sent to the storage and not yet
+	 *         acknowledged
+	 */
 	public synchronized boolean isSending() {
-		return sending;
+		return inFlight.size > 0;
 	}
 
-	public synchronized void setSending(boolean sending) {
-		this.sending = sending;
+	/**
+	 * @param maxInFlight
+	 *            maximum number of batches sent to the storage and waiting for
+	 *            its answer. With more than one, a batch can be sent before the
+	 *            previous ones are acknowledged, and batches can be stored out
+	 *            of order: use {@link TraceBuffer#getSequence()} to restore
+	 *            it. 1 by default
+	 */
+	public synchronized void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = Math.max(1, maxInFlight);
 	}
 
 	public synchronized boolean isConnected() {
@@ -102,6 +317,164 @@ public abstract class AbstractTracker {
 
 	public synchronized void setConnecting(boolean connecting) {
 		this.connecting = connecting;
+		if (!connecting && closing != null) {
+			progressClose();
+		}
+	}
+
+	/**
+	 * Limits the memory used by traces not yet acknowledged by the storage,
+	 * e.g., while the network is down. By default there is no limit
+	 * 
+	 * @param maxTraces
+	 *            maximum number of traces
+	 * @param maxChars
+	 *            maximum length of all the traces together, in characters
+	 *            (estimated for {@link TraceEvent}s, see
+	 *            {@link TraceEvent#length()})
+	 * @param overflowPolicy
+	 *            what to do when a new trace does not fit. Dropped traces are
+	 *            counted in {@link #getDroppedTraces()}
+	 */
+	public synchronized void setBudget(int maxTraces, long maxChars,
+			OverflowPolicy overflowPolicy) {
+		this.maxTraces = maxTraces;
+		this.maxChars = maxChars;
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	/**
+	 * @param blockTimeout
+	 *            milliseconds that {@link OverflowPolicy#BLOCK} waits for room
+	 *            before dropping a trace. The thread updating the tracker only
+	 *            waits if there are batches in flight: nobody else would flush
+	 *            the traces
+	 */
+	public synchronized void setBlockTimeout(long blockTimeout) {
+		this.blockTimeout = blockTimeout;
+	}
+
+	public DroppedTraces getDroppedTraces() {
+		return droppedTraces;
+	}
+
+	/**
+	 * Sets a journal where traces are written when queued, so they are not
+	 * lost if the game crashes before they are acknowledged. The traces not
+	 * acknowledged in the previous session are recovered in
+	 * {@link #start()}. Must be set before starting the tracker
+	 */
+	public synchronized void setJournal(TraceJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Sets the backoff for retrying the start handshake and failed batches.
+	 * By default, from 1 second up to 30 seconds
+	 */
+	public synchronized void setBackoff(Backoff backoff) {
+		this.backoff = backoff;
+	}
+
+	/**
+	 * @return the state of the connection with the storage
+	 */
+	public synchronized CircuitState getCircuitState() {
+		if (backoff.getFailures() == 0) {
+			return CircuitState.CLOSED;
+		}
+		return retryDelay > 0 ? CircuitState.OPEN : CircuitState.HALF_OPEN;
+	}
+
+	/**
+	 * @return seconds until the next retry, if the circuit is open
+	 */
+	public synchronized float getRetryDelay() {
+		return retryDelay;
+	}
+
+	/**
+	 * Updates the backoff with the result of a request to the storage
+	 */
+	private synchronized void requestFinished(boolean succeeded) {
+		if (succeeded) {
+			backoff.reset();
+			retryDelay = 0;
+		} else if (retryDelay <= 0) {
+			// Other requests failing meanwhile do not extend the delay
+			retryDelay = backoff.failed();
+		}
+	}
+
+	/**
+	 * Sets where the traces still not sent go when {@link #closeAsync(long)}
+	 * times out, so they are sent in the next session. They are recovered in
+	 * {@link #start()}. Not needed with a journal, that keeps them anyway.
+	 * Without both, they are dropped
+	 */
+	public synchronized void setSpool(TraceJournal spool) {
+		this.spool = spool;
+	}
+
+	/**
+	 * @return number of traces held by the tracker, from the moment they are
+	 *         added until the storage acknowledges them
+	 */
+	public int getHeldTraces() {
+		return heldTraces.get();
+	}
+
+	/**
+	 * Flush as soon as there are this many traces queued (not yet sent), or
+	 * this many characters, instead of waiting for the flush interval.
+	 * Disabled by default
+	 * 
+	 * @param traces
+	 *            number of queued traces that triggers a flush
+	 * @param chars
+	 *            length of the queued traces, in characters (estimated for
+	 *            {@link TraceEvent}s), that triggers a flush
+	 */
+	public void setFlushThresholds(int traces, long chars) {
+		this.flushTraces = traces;
+		this.flushChars = chars;
+	}
+
+	/**
+	 * Limits how long traces wait in the queue
+	 * 
+	 * @param minLinger
+	 *            seconds queued traces wait, at least, before the flush
+	 *            interval or the flush thresholds can flush them, so small
+	 *            trickles of traces are sent together. 0 by default.
+	 *            {@link #requestFlush()} ignores it
+	 * @param maxLinger
+	 *            seconds after which queued traces are flushed, whatever the
+	 *            flush interval and the thresholds. -1 (the default) to
+	 *            disable it
+	 */
+	public void setLinger(float minLinger, float maxLinger) {
+		this.minLinger = minLinger;
+		this.maxLinger = maxLinger;
+	}
+
+	/**
+	 * @return number of traces added and not yet sent
+	 */
+	public int getQueuedTraces() {
+		return heldTraces.get() - inFlightTraces;
+	}
+
+	public TraceSerializer getSerializer() {
+		return serializer;
+	}
+
+	/**
+	 * Changes the format of the batches sent to the storage
+	 */
+	public synchronized void setSerializer(TraceSerializer serializer) {
+		this.serializer = serializer;
+		endSize = -1;
 	}
 
 	/**
@@ -110,29 +483,114 @@ public abstract class AbstractTracker {
 	 * good place to call {@link #start()}
 	 */
 	public void start() {
+		if (journal != null) {
+			recover(journal);
+		}
+		if (spool != null) {
+			recover(spool);
+		}
 		connect();
 	}
 
+	private void recover(TraceJournal journal) {
+		Array<String> traces = new Array<String>();
+		IntArray priorities = new IntArray();
+		synchronized (this) {
+			journal.recover(traces, priorities);
+			if (journal == this.journal) {
+				journalMark = journal.position();
+			} else {
+				// Back in memory (and in the journal, if any)
+				journal.checkpoint(journal.position());
+			}
+		}
+		for (int i = 0; i < traces.size; i++) {
+			addTrace(traces.get(i), priorities.get(i));
+		}
+	}
+
 	/**
-	 * Updates the tracker. This method must be called in the game loop
+	 * Updates the tracker. This method must be called in the game loop,
+	 * unless the tracker was added to a {@link FlushScheduler}: then it only
+	 * delivers the traces to the {@link Delivery#PER_FRAME} listeners
 	 * 
 	 * @param delta
 	 *            seconds since last update
 	 */
 	public void update(float delta) {
+		listeners.deliverFrame();
+		if (scheduler == null) {
+			tick(delta);
+		}
+	}
+
+	void setScheduler(Runnable scheduler) {
+		this.scheduler = scheduler;
+	}
+
+	private void wakeScheduler() {
+		Runnable scheduler = this.scheduler;
+		if (scheduler != null) {
+			scheduler.run();
+		}
+	}
+
+	/**
+	 * Does the work of {@link #update(float)}, from the game loop or the
+	 * scheduler
+	 * 
+	 * @return false once the tracker is closed
+	 */
+	boolean tick(float delta) {
+		updater = Monitor.currentThread();
+		if (closing != null) {
+			synchronized (this) {
+				progressClose();
+			}
+			if (closing.isDone()) {
+				closeStorage();
+				return false;
+			}
+			return true;
+		}
+
+		synchronized (this) {
+			retryDelay = Math.max(0, retryDelay - delta);
+		}
+
 		if (flushInterval >= 0) {
 			nextFlush -= delta;
 			if (nextFlush <= 0) {
-				flushRequested = true;
+				flushDue = true;
 			}
 			while (nextFlush <= 0) {
 				nextFlush += flushInterval;
 			}
 		}
 
+		if (journal != null) {
+			// Journal traces at least once per frame
+			drainIncoming();
+		}
+
+		int queued = getQueuedTraces();
+		if (queued > 0) {
+			lingered += delta;
+			if ((lingered >= minLinger && (flushDue || queued >= flushTraces || heldLength
+					.get() - inFlightLength >= flushChars))
+					|| (maxLinger >= 0 && lingered >= maxLinger)) {
+				flushRequested = true;
+			}
+		} else {
+			// Nothing to send: do not wake up the network
+			lingered = 0;
+			flushDue = false;
+		}
+
 		if (flushRequested) {
 			flush();
 		}
+		return true;
 	}
 
 	/**
@@ -141,60 +599,592 @@ public abstract class AbstractTracker {
 	 */
 	public void requestFlush() {
 		flushRequested = true;
+		wakeScheduler();
 	}
 
 	/**
-	 * Closes the connection and finalizes the tracking session. No further
-	 * traces can be logged after {@link #close()} is invoked. Make sure to
-	 * invoke this method before your game exits.
+	 * Closes the connection and finalizes the tracking session, waiting up
+	 * to {@link #CLOSE_TIMEOUT} for the traces to be sent. No further traces
+	 * can be logged after {@link #close()} is invoked. Make sure to invoke
+	 * this method (or {@link #closeAsync(long)}) before your game exits.
 	 */
 	public void close() {
-		int retries = 10;
-		while ((!queue.isEmpty() || isSending()) && retries > 0) {
-			if (isSending() || isConnecting()) {
-				try {
-					Thread.sleep(500);
-				} catch (InterruptedException e) {
+		closeAsync(CLOSE_TIMEOUT).await(CLOSE_TIMEOUT);
+	}
+
+	/**
+	 * Starts closing the tracker without blocking. The remaining traces are
+	 * sent through the usual batches; each answer from the storage sends the
+	 * next ones. If the timeout passes or a batch fails, the traces not sent
+	 * go to the journal or the spool (see {@link #setSpool(TraceJournal)}).
+	 * 
+	 * The timeout is checked whenever the storage answers, and in
+	 * {@link #update(float)} (or the {@link FlushScheduler}) and
+	 * {@link CloseHandle#await(long)}. The storage is closed by the first of
+	 * them after the close finishes, since it could be finishing in a thread
+	 * of the storage.
+	 * 
+	 * If the game loop stops (e.g., in the dispose of an Android
+	 * application) and no {@link FlushScheduler} updates the tracker, a
+	 * storage that never answers would keep the traces from being spooled:
+	 * then the caller must {@link CloseHandle#await(long)} the handle, or
+	 * use {@link #close()}
+	 * 
+	 * @param timeout
+	 *            milliseconds to try to send the remaining traces
+	 * @return a handle to check the close
+	 */
+	public synchronized CloseHandle closeAsync(long timeout) {
+		if (closing == null) {
+			closing = new CloseHandle(System.currentTimeMillis() + timeout);
+			progressClose();
+			wakeScheduler();
+		}
+		return closing;
+	}
+
+	/**
+	 * Sends the next batches while closing, or finishes the close
+	 */
+	private synchronized void progressClose() {
+		if (closing.done) {
+			return;
+		}
+		if (closing.failed || System.currentTimeMillis() >= closing.deadline) {
+			finishClose();
+			return;
+		}
+		if (!connected) {
+			if (!connecting) {
+				if (closing.connectAttempted) {
+					// The start handshake failed
+					finishClose();
+				} else {
+					closing.connectAttempted = true;
+					connect();
 				}
-				retries--;
-			} else {
-				flush();
 			}
+			return;
+		}
+		flush();
+		if (!closing.done && inFlight.size == 0 && !hasPendingTraces()) {
+			finishClose();
+		}
+	}
+
+	/**
+	 * Hands the traces not acknowledged to the journal or the spool
+	 */
+	private void finishClose() {
+		drainIncoming();
+		Array<FlushListener> pending = new Array<FlushListener>(failed);
+		pending.addAll(inFlight);
+		pending.sort(BY_SEQUENCE);
+
+		int leftovers = queue.size();
+		for (int i = 0; i < pending.size; i++) {
+			leftovers += pending.get(i).traces.size();
+			if (journal == null) {
+				spool(pending.get(i).traces);
+			}
+		}
+		if (journal == null) {
+			spool(queue);
+		}
+
+		for (int i = 0; i < failed.size; i++) {
+			FlushListener batch = failed.get(i);
+			release(batch.traces.size(), batch.traces.length());
+			batches.free(batch);
+		}
+		failed.clear();
+		for (int i = 0; i < inFlight.size; i++) {
+			FlushListener batch = inFlight.get(i);
+			release(batch.traces.size(), batch.traces.length());
+		}
+		// Their traces are in the journal or the spool: late answers are
+		// ignored. Not pooled, since the storage might still use them
+		inFlight.clear();
+		inFlightTraces = 0;
+		inFlightLength = 0;
+		release(queue.size(), queue.length());
+		queue.clear();
+
+		if (journal != null) {
+			journal.close();
+		}
+		if (spool != null) {
+			spool.close();
+		}
+		closing.leftovers = leftovers;
+		closing.done = true;
+		Monitor.signalAll(this);
+	}
+
+	private void spool(SegmentList traces) {
+		for (TraceSegment segment = traces.first(); segment != null;
+				segment = segment.next()) {
+			for (int i = 0; i < segment.size(); i++) {
+				if (spool == null) {
+					droppedTraces.dropped(segment.get(i),
+							segment.getPriority(i));
+				} else {
+					spool.append(segment.get(i).toString(),
+							segment.getPriority(i));
+				}
+			}
+		}
+	}
+
+	private void closeStorage() {
+		synchronized (this) {
+			if (storageClosed) {
+				return;
+			}
+			storageClosed = true;
 		}
+		// Outside the lock: the storage might wait for its pending answers
 		storage.close();
+		listeners.dispose();
 	}
 
-	protected void connect() {
-		if (!isConnected() && !isConnecting()) {
+	/**
+	 * Starts the handshake with the storage, unless connected, connecting, or
+	 * waiting to retry
+	 */
+	protected synchronized void connect() {
+		if (!connected && !connecting && retryDelay <= 0) {
 			setConnecting(true);
 			storage.start(startListener);
 		}
 	}
 
 	/**
-	 * Sends all traces to the server and empties the current queue of traces
+	 * Sends all traces to the server and empties the current queue of traces.
+	 * Failed batches are sent first, with their original sequence numbers
 	 */
-	private void flush() {
-		if (!isConnected()) {
+	private synchronized void flush() {
+		drainIncoming();
+		if (retryDelay > 0) {
+			// Circuit open
+			return;
+		}
+		if (!connected) {
 			connect();
-		} else if (!queue.isEmpty() && !isSending()) {
-			setSending(true);
-			sent.addAll(queue);
-			queue.clear();
-			flushRequested = false;
-			storage.send(serialize(sent), flushListener);
+			if (!connected) {
+				return;
+			}
+		}
+
+		flushes++;
+		// Half open: a single batch probes the storage
+		int maxInFlight = backoff.getFailures() > 0 ? 1 : this.maxInFlight;
+		boolean split = false;
+		while (inFlight.size < maxInFlight) {
+			FlushListener batch;
+			if (failed.size > 0) {
+				if (failed.first().failedFlush == flushes) {
+					break;
+				}
+				batch = failed.removeIndex(0);
+			} else if (!queue.isEmpty()) {
+				batch = batches.obtain();
+				batch.sequence = nextSequence++;
+				int maxSize = getMaxRequestSize();
+				int taken;
+				if (maxSize > 0) {
+					taken = fill(batch, maxSize);
+					split = !queue.isEmpty();
+				} else {
+					taken = queue.size();
+					queue.swap(batch.traces);
+				}
+				if (journal != null) {
+					batch.journalStart = journalMark;
+					// The queue is in journal order, so the traces left are
+					// at least as far as the ones taken
+					journalMark = queue.isEmpty() ? journal.position()
+							: journalMark + taken;
+				}
+			} else {
+				break;
+			}
+
+			if (batch.traces.isEmpty()) {
+				// All its traces were dropped
+				batches.free(batch);
+				checkpoint();
+			} else {
+				flushRequested = false;
+				flushDue = false;
+				lingered = 0;
+				send(batch);
+			}
+		}
+		if (split) {
+			// The rest of the backlog goes as soon as there is room
+			flushRequested = true;
 		}
 	}
 
+	/**
+	 * @return the maximum size of each batch, or 0 for no limit. Only
+	 *         storages extending {@link AbstractStorage} can set one
+	 */
+	private int getMaxRequestSize() {
+		return storage instanceof AbstractStorage ? ((AbstractStorage) storage)
+				.getMaxRequestSize() : 0;
+	}
+
+	/**
+	 * Moves traces from the queue to the batch, serializing them, until the
+	 * next one does not fit in the given size. Traces that would not fit
+	 * even alone are dropped: the storage would never accept them
+	 * 
+	 * @return number of traces taken from the queue, dropped ones included
+	 */
+	private int fill(FlushListener batch, int maxSize) {
+		TraceBuffer buffer = buffers.obtain();
+		if (endSize == -1) {
+			serializer.end(buffer);
+			endSize = buffer.size();
+			buffer.reset();
+		}
+
+		serializer.begin(buffer);
+		int emptySize = buffer.size();
+		int taken = 0;
+		while (!queue.isEmpty()) {
+			TraceSegment first = queue.first();
+			Object trace = first.get(0);
+			int priority = first.getPriority(0);
+			int size = buffer.size();
+			int traceCount = buffer.traceCount();
+			serializer.write(trace.toString(), buffer);
+			if (buffer.size() + endSize > maxSize) {
+				buffer.truncate(size, traceCount);
+				if (size > emptySize) {
+					break;
+				}
+				drop(queue.removeFirst(), priority);
+			} else {
+				batch.traces.add(queue.removeFirst(), priority);
+			}
+			taken++;
+		}
+		serializer.end(buffer);
+		if (batch.traces.isEmpty()) {
+			buffers.free(buffer);
+		} else {
+			batch.buffer = buffer;
+		}
+		return taken;
+	}
+
+	@SuppressWarnings("deprecation")
+	private void send(FlushListener batch) {
+		inFlight.add(batch);
+		inFlightTraces += batch.traces.size();
+		inFlightLength += batch.traces.length();
+		if (batch.buffer == null) {
+			batch.buffer = buffers.obtain();
+			serialize(batch.traces, batch.buffer);
+		}
+		batch.buffer.setSequence(batch.sequence);
+		if (storage instanceof AbstractStorage) {
+			((AbstractStorage) storage).send(batch.buffer, batch);
+		} else {
+			storage.send(batch.buffer.toString(), batch);
+		}
+	}
+
+	/**
+	 * Serializes the given traces into the buffer
+	 */
+	public void serialize(List<String> traces, TraceBuffer out) {
+		serializer.begin(out);
+		for (int i = 0; i < traces.size(); i++) {
+			serializer.write(traces.get(i), out);
+		}
+		serializer.end(out);
+	}
+
+	private void serialize(SegmentList traces, TraceBuffer out) {
+		serializer.begin(out);
+		for (TraceSegment segment = traces.first(); segment != null;
+				segment = segment.next()) {
+			for (int i = 0; i < segment.size(); i++) {
+				serializer.write(segment.get(i).toString(), out);
+			}
+		}
+		serializer.end(out);
+	}
+
+	/**
+	 * Moves the traces added so far to the queue of the next flush
+	 */
+	private synchronized void drainIncoming() {
+		if (journal == null) {
+			queue.addAll(incoming);
+		} else {
+			Object trace;
+			while ((trace = incoming.poll(tag)) != null) {
+				journal.append(trace.toString(), tag[0]);
+				queue.add(trace, tag[0]);
+			}
+		}
+	}
+
+	/**
+	 * Advances the journal checkpoint to the first trace not acknowledged
+	 */
+	private void checkpoint() {
+		if (journal == null) {
+			return;
+		}
+		long position = journalMark;
+		for (int i = 0; i < inFlight.size; i++) {
+			position = Math.min(position, inFlight.get(i).journalStart);
+		}
+		for (int i = 0; i < failed.size; i++) {
+			position = Math.min(position, failed.get(i).journalStart);
+		}
+		journal.checkpoint(position);
+	}
+
+	private synchronized boolean hasPendingTraces() {
+		return !queue.isEmpty() || failed.size > 0 || !incoming.isEmpty();
+	}
+
+	/**
+	 * The storage is done with the given batch
+	 * 
+	 * @param acknowledged
+	 *            if the traces were stored. If not, the batch is sent again in
+	 *            the next flush
+	 */
+	private synchronized void sendFinished(FlushListener batch,
+			boolean acknowledged) {
+		if (!inFlight.removeValue(batch, true)) {
+			// Already finished
+			return;
+		}
+		inFlightTraces -= batch.traces.size();
+		inFlightLength -= batch.traces.length();
+		requestFinished(acknowledged);
+		buffers.free(batch.buffer);
+		batch.buffer = null;
+		if (acknowledged) {
+			release(batch.traces.size(), batch.traces.length());
+			batches.free(batch);
+			checkpoint();
+			Monitor.signalAll(this);
+		} else {
+			batch.failedFlush = flushes;
+			int i = 0;
+			while (i < failed.size
+					&& failed.get(i).sequence < batch.sequence) {
+				i++;
+			}
+			failed.insert(i, batch);
+		}
+
+		if (closing != null) {
+			closing.failed |= !acknowledged;
+			progressClose();
+		}
+	}
+
+	/**
+	 * Adds a listener called by the thread adding each trace
+	 */
 	public void addTraceListener(TraceListener traceListener) {
-		listeners.add(traceListener);
+		addTraceListener(traceListener, Delivery.SYNC);
+	}
+
+	/**
+	 * @param delivery
+	 *            how traces are handed to the listener
+	 */
+	public void addTraceListener(TraceListener traceListener,
+			Delivery delivery) {
+		listeners.add(traceListener, delivery);
 	}
 
+	/**
+	 * @return traces that did not reach the listeners of the given delivery
+	 *         ({@link Delivery#ASYNC} or {@link Delivery#PER_FRAME}), because
+	 *         they fell behind
+	 */
+	public int getUndeliveredTraces(Delivery delivery) {
+		return listeners.getDropped(delivery);
+	}
+
+	/**
+	 * Adds a trace with {@link #PRIORITY_NORMAL} to the queue. Can be called
+	 * from any thread
+	 */
 	public void addTrace(String trace) {
-		queue.add(trace);
-		for (TraceListener listener : listeners) {
-			listener.trace(trace);
+		addTrace(trace, PRIORITY_NORMAL);
+	}
+
+	/**
+	 * Adds a trace to the queue. Can be called from any thread
+	 * 
+	 * @param priority
+	 *            {@link #PRIORITY_LOW}, {@link #PRIORITY_NORMAL} or
+	 *            {@link #PRIORITY_HIGH}. Used by
+	 *            {@link OverflowPolicy#DROP_LOW_PRIORITY}
+	 */
+	public void addTrace(String trace, int priority) {
+		add(trace, priority);
+	}
+
+	/**
+	 * Adds an event to the queue. Its text is not formatted until it is
+	 * needed, usually in the flush that sends it. Can be called from any
+	 * thread
+	 * 
+	 * @param priority
+	 *            as in {@link #addTrace(String, int)}
+	 */
+	public void addTrace(TraceEvent event, int priority) {
+		add(event, priority);
+	}
+
+	private void add(Object trace, int priority) {
+		priority = Math.max(PRIORITY_LOW, Math.min(PRIORITY_HIGH, priority));
+		int traces = heldTraces.incrementAndGet();
+		long length = heldLength.addAndGet(TraceEvent.length(trace));
+		if ((traces > maxTraces || length > maxChars)
+				&& !makeRoom(trace, priority)) {
+			return;
+		}
+
+		while (!incoming.offer(trace, priority)) {
+			// No flush in a long time, make room
+			drainIncoming();
 		}
+		listeners.dispatch(trace);
+	}
+
+	private boolean isOverBudget() {
+		return heldTraces.get() > maxTraces || heldLength.get() > maxChars;
+	}
+
+	private void release(int traces, long length) {
+		heldTraces.addAndGet(-traces);
+		heldLength.addAndGet(-length);
+	}
+
+	private void drop(Object trace, int priority) {
+		release(1, TraceEvent.length(trace));
+		droppedTraces.dropped(trace, priority);
+	}
+
+	/**
+	 * Drops the oldest trace not in flight
+	 * 
+	 * @return false if there was none
+	 */
+	private boolean dropOldest() {
+		for (int i = 0; i < failed.size; i++) {
+			if (dropFirst(failed.get(i).traces, -1)) {
+				return true;
+			}
+		}
+		return dropFirst(queue, -1);
+	}
+
+	/**
+	 * Drops the oldest trace not in flight with the lowest priority
+	 * 
+	 * @param maxPriority
+	 *            the maximum priority the dropped trace can have
+	 * @return false if there was none
+	 */
+	private boolean dropLowest(int maxPriority) {
+		int lowest = queue.lowestPriority();
+		for (int i = 0; i < failed.size; i++) {
+			int priority = failed.get(i).traces.lowestPriority();
+			if (priority != -1 && (lowest == -1 || priority < lowest)) {
+				lowest = priority;
+			}
+		}
+		if (lowest == -1 || lowest > maxPriority) {
+			return false;
+		}
+
+		for (int i = 0; i < failed.size; i++) {
+			if (dropFirst(failed.get(i).traces, lowest)) {
+				return true;
+			}
+		}
+		return dropFirst(queue, lowest);
+	}
+
+	/**
+	 * @param priority
+	 *            priority of the trace to drop, or -1 for any
+	 */
+	private boolean dropFirst(SegmentList traces, int priority) {
+		if (priority == -1) {
+			if (traces.isEmpty()) {
+				return false;
+			}
+			priority = traces.first().getPriority(0);
+			drop(traces.removeFirst(), priority);
+			return true;
+		}
+		Object trace = traces.removeFirst(priority);
+		if (trace == null) {
+			return false;
+		}
+		drop(trace, priority);
+		return true;
+	}
+
+	/**
+	 * Applies the {@link #overflowPolicy}. The new trace is already counted
+	 * in the held traces
+	 * 
+	 * @return if the new trace can be added. If not, it has been dropped
+	 */
+	private synchronized boolean makeRoom(Object trace, int priority) {
+		drainIncoming();
+		switch (overflowPolicy) {
+		case DROP_OLDEST:
+			while (isOverBudget() && dropOldest()) {
+			}
+			break;
+		case DROP_LOW_PRIORITY:
+			while (isOverBudget() && dropLowest(priority)) {
+			}
+			break;
+		case BLOCK:
+			if (inFlight.size == 0 && updater == Monitor.currentThread()) {
+				// Only this thread could flush the traces to make room
+				break;
+			}
+			long timeout = blockTimeout;
+			long deadline = System.currentTimeMillis() + timeout;
+			while (isOverBudget() && timeout > 0
+					&& Monitor.await(this, timeout)) {
+				timeout = deadline - System.currentTimeMillis();
+			}
+			if (isOverBudget()) {
+				droppedTraces.timedOut();
+			}
+			break;
+		case DROP_NEWEST:
+			break;
+		}
+
+		if (isOverBudget()) {
+			drop(trace, priority);
+			return false;
+		}
+		return true;
 	}
 
 	public boolean isReady() {
@@ -203,9 +1193,12 @@ public abstract class AbstractTracker {
 
 	public abstract void startData(ObjectMap data);
 
-	public abstract String contentType();
-
-	public abstract String serialize(ArrayList<String> traces);
+	/**
+	 * @return the content type of the data sent to the storage
+	 */
+	public String contentType() {
+		return serializer.contentType();
+	}
 
 	public static class StartListener implements HttpResponseListener {
 
@@ -226,7 +1219,10 @@ public abstract class AbstractTracker {
 				} catch (Exception e) {
 					e.printStackTrace();
 				}
+				tracker.requestFinished(true);
 				tracker.setConnected(true);
+			} else {
+				tracker.requestFinished(false);
 			}
 			tracker.setConnecting(false);
 		}
@@ -237,33 +1233,134 @@ public abstract class AbstractTracker {
 
 		@Override
 		public void failed(Throwable t) {
+			tracker.requestFinished(false);
 			tracker.setConnecting(false);
 		}
 
 		@Override
 		public void cancelled() {
+			tracker.requestFinished(false);
 			tracker.setConnecting(false);
 		}
 	}
 
-	public class FlushListener implements HttpResponseListener {
+	private static final Comparator<FlushListener> BY_SEQUENCE = new Comparator<FlushListener>() {
+		@Override
+		public int compare(FlushListener o1, FlushListener o2) {
+			return o1.sequence < o2.sequence ? -1
+					: o1.sequence == o2.sequence ? 0 : 1;
+		}
+	};
+
+	/**
+	 * Result of {@link AbstractTracker#closeAsync(long)}
+	 */
+	public class CloseHandle {
+
+		private final long deadline;
+
+		private boolean done;
+
+		private boolean failed;
+
+		private boolean connectAttempted;
+
+		private int leftovers;
+
+		private CloseHandle(long deadline) {
+			this.deadline = deadline;
+		}
+
+		/**
+		 * @return if the close finished: all traces were acknowledged, or
+		 *         the rest were handed to the journal or the spool
+		 */
+		public boolean isDone() {
+			synchronized (AbstractTracker.this) {
+				return done;
+			}
+		}
+
+		/**
+		 * @return the number of traces not acknowledged when the close
+		 *         finished
+		 */
+		public int getLeftovers() {
+			synchronized (AbstractTracker.this) {
+				return leftovers;
+			}
+		}
+
+		/**
+		 * Blocks until the close finishes or the timeout passes, and closes
+		 * the storage if finished. In GWT, it only checks the close once
+		 * 
+		 * @return if the close finished
+		 */
+		public boolean await(long timeout) {
+			long end = System.currentTimeMillis() + timeout;
+			synchronized (AbstractTracker.this) {
+				progressClose();
+				long now;
+				while (!done && (now = System.currentTimeMillis()) < end) {
+					if (!Monitor.await(AbstractTracker.this,
+							Math.max(1, Math.min(end, deadline) - now))) {
+						break;
+					}
+					progressClose();
+				}
+			}
+			if (isDone()) {
+				closeStorage();
+				return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * A batch of traces sent to the storage, waiting for its answer
+	 */
+	public class FlushListener implements HttpResponseListener, Poolable {
+
+		private long sequence;
+
+		private int failedFlush;
+
+		private long journalStart;
+
+		private final SegmentList traces = new SegmentList(segments);
+
+		private TraceBuffer buffer;
+
+		/**
+		 * @return the sequence number of the batch. Batches are numbered in
+		 *         the order their traces were added
+		 */
+		public long getSequence() {
+			return sequence;
+		}
 
 		@Override
 		public void handleHttpResponse(HttpResponse httpResponse) {
-			if (httpResponse.getStatus().getStatusCode() / 100 == 2) {
-				sent.clear();
-			}
-			setSending(false);
+			sendFinished(this,
+					httpResponse.getStatus().getStatusCode() / 100 == 2);
 		}
 
 		@Override
 		public void failed(Throwable t) {
-			setSending(false);
+			sendFinished(this, false);
 		}
 
 		@Override
 		public void cancelled() {
-			setSending(false);
+			sendFinished(this, false);
+		}
+
+		@Override
+		public void reset() {
+			traces.clear();
+			buffer = null;
 		}
 	}
 
@@ -274,4 +1371,25 @@ public abstract class AbstractTracker {
 		void trace(String trace);
 	}
 
+	/**
+	 * How traces are handed to a {@link TraceListener}
+	 */
+	public enum Delivery {
+		/**
+		 * By the thread adding the trace, before
+		 * {@link AbstractTracker#addTrace(String)} returns
+		 */
+		SYNC,
+		/**
+		 * By a thread of the listeners, in the order they were added. Traces
+		 * are formatted in that thread
+		 */
+		ASYNC,
+		/**
+		 * By {@link AbstractTracker#update(float)}, in the game loop, all the
+		 * traces added since the last frame
+		 */
+		PER_FRAME
+	}
+
 }
@@ -15,11 +15,12 @@
  */
 package es.eucm.gleaner.tracker;
 
+import com.badlogic.gdx.utils.ObjectIntMap;
 import com.badlogic.gdx.utils.ObjectMap;
+import es.eucm.gleaner.tracker.format.CsvEncoder;
+import es.eucm.gleaner.tracker.format.CsvSerializer;
 import es.eucm.gleaner.tracker.storage.Storage;
 
-import java.util.ArrayList;
-
 public class CsvTracker extends AbstractTracker{
 
 	String STARTED = "started";
@@ -34,35 +35,36 @@ public class CsvTracker extends AbstractTracker{
 	String ZONE = "zone";
 	String CLICK = "click";
 
+	/**
+	 * Formats every trace, when its text is needed. Guarded by itself
+	 */
+	private final CsvEncoder encoder = new CsvEncoder();
+
+	private final ObjectIntMap<String> priorities = new ObjectIntMap<String>();
+
 	public CsvTracker(Storage storage) {
-		super(storage);
+		this(storage, -1);
 	}
 
 	public CsvTracker(Storage storage, float flushInterval) {
-		super(storage, flushInterval);
+		super(storage, new CsvSerializer(), flushInterval);
+		priorities.put(STARTED, PRIORITY_HIGH);
+		priorities.put(COMPLETED, PRIORITY_HIGH);
+		priorities.put(CLICK, PRIORITY_LOW);
 	}
 
-
-
 	/**
-	 * Escapes a piece of input in case it has commas by adding quotes at
-	 * beginning and end. If there are any quotes in the piece of input
-	 * provided, these are escaped by adding a back slash Examples: input with
-	 * a, comma => "input with a, comma" input "with \"quotes    =>   "input
-	 * \"with \\"quotes" "input with, quotes, and commas" =>
-	 * "\"input with, quotes, and commas\""
-	 *
-	 * @param input
-	 *            The input to be escaped
-	 * @return The escaped version of the input
+	 * Sets the priority of the traces of the given event (the first value of
+	 * the trace). By default, {@link #started(String)} and
+	 * {@link #completed(String)} have {@link #PRIORITY_HIGH}, clicks have
+	 * {@link #PRIORITY_LOW} and all the rest {@link #PRIORITY_NORMAL}
 	 */
-	private String escapeInput(String input) {
-		if (!input.contains(",") && !input.contains("\"")) {
-			return input;
-		}
-		input = input.replaceAll("\"", "\\\\\"");
-		input = "\"" + input + "\"";
-		return input;
+	public void setPriority(String event, int priority) {
+		priorities.put(event, priority);
+	}
+
+	private int priority(String event) {
+		return priorities.get(event, PRIORITY_NORMAL);
 	}
 
 	// Trace methods
@@ -70,35 +72,54 @@ public class CsvTracker extends AbstractTracker{
 	 * Adds the given trace to the queue
 	 */
 	public void trace(String trace) {
-		String t = System.currentTimeMillis() + "," + trace;
-		addTrace(t);
+		addTrace(new CsvEvent(RAW, trace, null), PRIORITY_NORMAL);
 	}
 
 	/**
 	 * Adds a trace built with the given values
 	 */
 	public void trace(String... values) {
-		String result = "";
-		int i = 0;
-		for (String value : values) {
-			result += escapeInput(value)
-					+ (i++ == values.length - 1 ? "" : ",");
-		}
-		trace(result);
+		CsvEvent event = new CsvEvent(FIELDS, null, null);
+		// The caller might reuse the array
+		event.values = values.clone();
+		addTrace(event, values.length > 0 ? priority(values[0])
+				: PRIORITY_NORMAL);
+	}
+
+	private void event(String event, String target) {
+		addTrace(new CsvEvent(EVENT, event, target), priority(event));
+	}
+
+	private void event(String event, String target, String value) {
+		CsvEvent e = new CsvEvent(EVENT_STRING, event, target);
+		e.value = value;
+		addTrace(e, priority(event));
+	}
+
+	private void event(String event, String target, int value) {
+		CsvEvent e = new CsvEvent(EVENT_INT, event, target);
+		e.intValue = value;
+		addTrace(e, priority(event));
+	}
+
+	private void event(String event, String target, float value) {
+		CsvEvent e = new CsvEvent(EVENT_FLOAT, event, target);
+		e.x = value;
+		addTrace(e, priority(event));
 	}
 
 	/**
 	 * Starts a completable
 	 */
 	public void started(String completableId){
-		trace(STARTED, completableId);
+		event(STARTED, completableId);
 	}
 
 	/**
 	 * Fulfills a completable
 	 */
 	public void completed(String completableId){
-		trace(COMPLETED, completableId);
+		event(COMPLETED, completableId);
 	}
 
 	/**
@@ -108,7 +129,7 @@ public class CsvTracker extends AbstractTracker{
 	 *            an unique identifier for the screen
 	 */
 	public void screen(String screenId) {
-		trace(SCREEN, screenId);
+		event(SCREEN, screenId);
 	}
 
 	/**
@@ -118,7 +139,7 @@ public class CsvTracker extends AbstractTracker{
 	 *            an unique identifier for the zone
 	 */
 	public void zone(String zoneId) {
-		trace(ZONE, zoneId);
+		event(ZONE, zoneId);
 	}
 
 	/**
@@ -133,7 +154,7 @@ public class CsvTracker extends AbstractTracker{
 	 *            the option identifier
 	 */
 	public void selected(String alternativeId, String optionId) {
-		trace(SELECTED, alternativeId, optionId);
+		event(SELECTED, alternativeId, optionId);
 	}
 
 	/**
@@ -146,15 +167,39 @@ public class CsvTracker extends AbstractTracker{
 	 *            serializable
 	 */
 	public void set(String varName, Object value) {
-		trace(SET, varName, value.toString());
+		event(SET, varName, value.toString());
+	}
+
+	public void set(String varName, int value) {
+		event(SET, varName, value);
+	}
+
+	public void set(String varName, float value) {
+		event(SET, varName, value);
 	}
 
 	public void increase(String varName, Number value){
-		trace(INCREASED, varName, value.toString());
+		event(INCREASED, varName, value.toString());
+	}
+
+	public void increase(String varName, int value) {
+		event(INCREASED, varName, value);
+	}
+
+	public void increase(String varName, float value) {
+		event(INCREASED, varName, value);
 	}
 
 	public void decrease(String varName, Number value){
-		trace(DECREASED, varName, value.toString());
+		event(DECREASED, varName, value.toString());
+	}
+
+	public void decrease(String varName, int value) {
+		event(DECREASED, varName, value);
+	}
+
+	public void decrease(String varName, float value) {
+		event(DECREASED, varName, value);
 	}
 
 	/**
@@ -175,7 +220,10 @@ public class CsvTracker extends AbstractTracker{
 	 *            Id of the element that was hit by the click
 	 */
 	public void click(float x, float y, String target) {
-		trace(CLICK, Float.toString(x), Float.toString(y), target);
+		CsvEvent event = new CsvEvent(CLICK_TARGET, CLICK, target);
+		event.x = x;
+		event.y = y;
+		addTrace(event, priority(CLICK));
 	}
 
 	/**
@@ -202,7 +250,10 @@ public class CsvTracker extends AbstractTracker{
 	 *            coordinate system
 	 */
 	public void click(float x, float y) {
-		trace(CLICK, Float.toString(x), Float.toString(y));
+		CsvEvent event = new CsvEvent(CLICK_POSITION, CLICK, null);
+		event.x = x;
+		event.y = y;
+		addTrace(event, priority(CLICK));
 	}
 
 
@@ -211,17 +262,100 @@ public class CsvTracker extends AbstractTracker{
 
 	}
 
-	@Override
-	public String serialize(ArrayList<String> traces) {
-		String result = "";
-		for (String trace : traces) {
-			result += trace + "\n";
+	private static final byte RAW = 0, FIELDS = 1, EVENT = 2,
+			EVENT_STRING = 3, EVENT_INT = 4, EVENT_FLOAT = 5,
+			CLICK_TARGET = 6, CLICK_POSITION = 7;
+
+	/**
+	 * Values of a trace, formatted with the {@link #encoder} when needed
+	 */
+	private class CsvEvent extends TraceEvent {
+
+		private final byte kind;
+
+		/**
+		 * The event, or the whole trace for {@link #RAW}
+		 */
+		private final String event;
+
+		private final String target;
+
+		private String value;
+
+		private String[] values;
+
+		private int intValue;
+
+		private float x;
+
+		private float y;
+
+		CsvEvent(byte kind, String event, String target) {
+			super(System.currentTimeMillis());
+			this.kind = kind;
+			this.event = event;
+			this.target = target;
 		}
-		return result;
-	}
 
-	@Override
-	public String contentType() {
-		return "text/plain";
+		@Override
+		public int length() {
+			// Timestamp, and numbers as 8 characters
+			int length = 14;
+			switch (kind) {
+			case RAW:
+				return length + event.length();
+			case FIELDS:
+				for (String value : values) {
+					length += value.length() + 1;
+				}
+				return length;
+			case CLICK_POSITION:
+				return length + event.length() + 18;
+			case CLICK_TARGET:
+				return length + event.length() + target.length() + 19;
+			case EVENT_STRING:
+				length += value.length() + 1;
+				break;
+			case EVENT_INT:
+			case EVENT_FLOAT:
+				length += 9;
+				break;
+			}
+			return length + event.length() + target.length() + 1;
+		}
+
+		@Override
+		protected String format() {
+			synchronized (encoder) {
+				encoder.begin(timestamp);
+				switch (kind) {
+				case RAW:
+					encoder.raw(event);
+					break;
+				case FIELDS:
+					for (String value : values) {
+						encoder.field(value);
+					}
+					break;
+				case CLICK_TARGET:
+				case CLICK_POSITION:
+					encoder.field(event).field(x).field(y);
+					if (target != null) {
+						encoder.field(target);
+					}
+					break;
+				default:
+					encoder.field(event).field(target);
+					if (kind == EVENT_STRING) {
+						encoder.field(value);
+					} else if (kind == EVENT_INT) {
+						encoder.field(intValue);
+					} else if (kind == EVENT_FLOAT) {
+						encoder.field(x);
+					}
+				}
+				return encoder.toString();
+			}
+		}
 	}
 }
@@ -0,0 +1,179 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker;
+
+import com.badlogic.gdx.utils.Array;
+
+/**
+ * Updates trackers from a daemon thread, instead of the game loop. Once a
+ * tracker is added, its {@link AbstractTracker#update(float)} does nothing:
+ * interval flushes, retries, journaling and closing progress here, even if
+ * the game stops calling it. A scheduler can be shared by several trackers.
+ * 
+ * Trackers are removed once closed. The thread is started with the first
+ * tracker, and stopped by {@link #dispose()}. Interrupting the thread
+ * disposes the scheduler too.
+ */
+public class FlushScheduler implements Runnable {
+
+	private final long period;
+
+	private final Array<AbstractTracker> trackers = new Array<AbstractTracker>(
+			false, 2);
+
+	/**
+	 * Copy of {@link #trackers} for the thread, so trackers are updated
+	 * without holding the lock of the scheduler
+	 */
+	private final Array<AbstractTracker> updating = new Array<AbstractTracker>(
+			false, 2);
+
+	private final Runnable waker = new Runnable() {
+		@Override
+		public void run() {
+			wake();
+		}
+	};
+
+	private Thread thread;
+
+	private boolean woken;
+
+	private boolean disposed;
+
+	/**
+	 * @param period
+	 *            seconds between updates of the trackers
+	 */
+	public FlushScheduler(float period) {
+		if (period <= 0) {
+			throw new IllegalArgumentException("Period must be positive: "
+					+ period);
+		}
+		this.period = Math.max(1, (long) (period * 1000));
+	}
+
+	/**
+	 * Updates the given tracker from now on
+	 */
+	public synchronized void add(AbstractTracker tracker) {
+		if (disposed) {
+			throw new IllegalStateException("Scheduler disposed");
+		}
+		if (trackers.contains(tracker, true)) {
+			return;
+		}
+		trackers.add(tracker);
+		tracker.setScheduler(waker);
+		if (thread == null) {
+			thread = new Thread(this, "tracker-flush");
+			thread.setDaemon(true);
+			thread.start();
+		}
+		wake();
+	}
+
+	/**
+	 * Stops updating the given tracker. The game loop has to call
+	 * {@link AbstractTracker#update(float)} again
+	 */
+	public synchronized void remove(AbstractTracker tracker) {
+		if (trackers.removeValue(tracker, true)) {
+			tracker.setScheduler(null);
+		}
+	}
+
+	/**
+	 * Updates the trackers as soon as possible, for flushes requested or
+	 * closes started outside the scheduler
+	 */
+	public synchronized void wake() {
+		woken = true;
+		notifyAll();
+	}
+
+	/**
+	 * Stops the thread, handing the trackers back to the game loop. Does not
+	 * close them
+	 */
+	public void dispose() {
+		Thread thread;
+		synchronized (this) {
+			thread = this.thread;
+			release();
+			notifyAll();
+		}
+		if (thread != null && thread != Thread.currentThread()) {
+			try {
+				thread.join();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Hands the trackers back to the game loop. Guarded by this
+	 */
+	private void release() {
+		disposed = true;
+		for (AbstractTracker tracker : trackers) {
+			tracker.setScheduler(null);
+		}
+		trackers.clear();
+		thread = null;
+	}
+
+	@Override
+	public void run() {
+		long last = System.nanoTime();
+		while (true) {
+			synchronized (this) {
+				if (!woken && !disposed) {
+					try {
+						wait(period);
+					} catch (InterruptedException e) {
+						release();
+						return;
+					}
+				}
+				woken = false;
+				if (disposed) {
+					return;
+				}
+				updating.clear();
+				updating.addAll(trackers);
+			}
+
+			long now = System.nanoTime();
+			float delta = (now - last) / 1000000000f;
+			last = now;
+			for (int i = 0; i < updating.size; i++) {
+				AbstractTracker tracker = updating.get(i);
+				boolean open = true;
+				try {
+					open = tracker.tick(delta);
+				} catch (RuntimeException e) {
+					// Keep updating the rest of the trackers
+					e.printStackTrace();
+				}
+				if (!open) {
+					remove(tracker);
+				}
+			}
+		}
+	}
+}
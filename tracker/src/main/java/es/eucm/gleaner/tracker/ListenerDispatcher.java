@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker;
+
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncTask;
+import es.eucm.gleaner.tracker.AbstractTracker.Delivery;
+import es.eucm.gleaner.tracker.AbstractTracker.TraceListener;
+import es.eucm.gleaner.tracker.atomic.AtomicBoolean;
+import es.eucm.gleaner.tracker.atomic.AtomicInteger;
+import es.eucm.gleaner.tracker.queue.TraceQueue;
+
+/**
+ * Hands the added traces to the {@link TraceListener}s. Synchronous listeners
+ * are called by the thread adding the trace. The rest get the traces through
+ * a bounded ring each: asynchronous listeners from a thread of their own,
+ * and per frame ones in {@link #deliverFrame()}. If a ring is full, the trace
+ * is not delivered to its listeners, so they never slow down the producers.
+ */
+class ListenerDispatcher implements AsyncTask<Void> {
+
+	private static final TraceListener[] NONE = new TraceListener[0];
+
+	/**
+	 * By {@link Delivery}. Replaced as a whole when a listener is added, so
+	 * they are read without locks
+	 */
+	private volatile TraceListener[][] listeners = { NONE, NONE, NONE };
+
+	private final TraceQueue<Object> asyncTraces;
+
+	private final TraceQueue<Object> frameTraces;
+
+	/**
+	 * If a task to deliver {@link #asyncTraces} is submitted
+	 */
+	private final AtomicBoolean draining = new AtomicBoolean();
+
+	/**
+	 * By {@link Delivery}
+	 */
+	private final AtomicInteger[] dropped = { new AtomicInteger(),
+			new AtomicInteger(), new AtomicInteger() };
+
+	/**
+	 * Created with the first asynchronous listener. Null once disposed
+	 */
+	private volatile AsyncExecutor executor;
+
+	/**
+	 * @param capacity
+	 *            traces that can wait for the asynchronous listeners, and for
+	 *            the per frame ones
+	 */
+	ListenerDispatcher(int capacity) {
+		asyncTraces = new TraceQueue<Object>(capacity);
+		frameTraces = new TraceQueue<Object>(capacity);
+	}
+
+	synchronized void add(TraceListener listener, Delivery delivery) {
+		if (delivery == Delivery.ASYNC && executor == null) {
+			executor = new AsyncExecutor(1);
+			if (!asyncTraces.isEmpty() && draining.compareAndSet(false, true)) {
+				executor.submit(this);
+			}
+		}
+		TraceListener[][] copy = listeners.clone();
+		TraceListener[] previous = copy[delivery.ordinal()];
+		TraceListener[] added = new TraceListener[previous.length + 1];
+		System.arraycopy(previous, 0, added, 0, previous.length);
+		added[previous.length] = listener;
+		copy[delivery.ordinal()] = added;
+		listeners = copy;
+	}
+
+	/**
+	 * @return traces not delivered to the listeners of the given delivery
+	 *         because their ring was full
+	 */
+	int getDropped(Delivery delivery) {
+		return dropped[delivery.ordinal()].get();
+	}
+
+	void dispatch(Object trace) {
+		TraceListener[][] listeners = this.listeners;
+		TraceListener[] sync = listeners[Delivery.SYNC.ordinal()];
+		if (sync.length > 0) {
+			deliver(sync, trace.toString());
+		}
+		if (listeners[Delivery.ASYNC.ordinal()].length > 0) {
+			if (!asyncTraces.offer(trace)) {
+				dropped[Delivery.ASYNC.ordinal()].incrementAndGet();
+			} else if (draining.compareAndSet(false, true)) {
+				AsyncExecutor executor = this.executor;
+				if (executor != null) {
+					executor.submit(this);
+				} else {
+					// Disposed: the traces wait for a new executor
+					draining.set(false);
+				}
+			}
+		}
+		if (listeners[Delivery.PER_FRAME.ordinal()].length > 0
+				&& !frameTraces.offer(trace)) {
+			dropped[Delivery.PER_FRAME.ordinal()].incrementAndGet();
+		}
+	}
+
+	/**
+	 * Delivers the traces waiting for the per frame listeners. Traces added
+	 * meanwhile wait for the next frame
+	 */
+	void deliverFrame() {
+		TraceListener[] perFrame = listeners[Delivery.PER_FRAME.ordinal()];
+		for (int i = frameTraces.size(); i > 0; i--) {
+			Object trace = frameTraces.poll();
+			if (trace == null) {
+				break;
+			}
+			deliver(perFrame, trace.toString());
+		}
+	}
+
+	/**
+	 * Delivers the traces waiting for the asynchronous listeners
+	 */
+	@Override
+	public Void call() {
+		do {
+			TraceListener[] async = listeners[Delivery.ASYNC.ordinal()];
+			Object trace;
+			while ((trace = asyncTraces.poll()) != null) {
+				String text = trace.toString();
+				for (TraceListener listener : async) {
+					try {
+						listener.trace(text);
+					} catch (RuntimeException e) {
+						// Keep delivering to the rest
+						e.printStackTrace();
+					}
+				}
+			}
+			draining.set(false);
+			// Traces offered after the last poll, but before draining ended
+		} while (!asyncTraces.isEmpty() && draining.compareAndSet(false, true));
+		return null;
+	}
+
+	private void deliver(TraceListener[] listeners, String trace) {
+		for (TraceListener listener : listeners) {
+			listener.trace(trace);
+		}
+	}
+
+	/**
+	 * Waits for the asynchronous listeners to get the pending traces, and
+	 * stops their thread
+	 */
+	void dispose() {
+		AsyncExecutor executor;
+		synchronized (this) {
+			executor = this.executor;
+			this.executor = null;
+		}
+		if (executor != null) {
+			executor.dispose();
+		}
+	}
+}
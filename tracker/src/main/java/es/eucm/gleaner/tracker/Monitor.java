@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker;
+
+/**
+ * Waits and notifies on object monitors. GWT has neither threads nor
+ * monitors, so its version of this class (in the emu folder of the module)
+ * never waits.
+ */
+public final class Monitor {
+
+	private Monitor() {
+	}
+
+	/**
+	 * Waits on the given object, whose lock must be held, up to the given
+	 * milliseconds
+	 * 
+	 * @return false if it could not wait: the thread was interrupted (the
+	 *         interrupt is kept)
+	 */
+	public static boolean await(Object lock, long timeout) {
+		try {
+			lock.wait(timeout);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Wakes the threads waiting on the given object, whose lock must be held
+	 */
+	public static void signalAll(Object lock) {
+		lock.notifyAll();
+	}
+
+	/**
+	 * @return an object identifying the calling thread
+	 */
+	public static Object currentThread() {
+		return Thread.currentThread();
+	}
+}
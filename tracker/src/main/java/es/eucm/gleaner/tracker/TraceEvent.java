@@ -0,0 +1,66 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker;
+
+/**
+ * A trace kept as its values (timestamp, ids, primitive results) until its
+ * text is needed, usually when its batch is serialized in a flush. The text
+ * is formatted once, by {@link #toString()}, and kept for retries.
+ * 
+ * Queued traces are either {@link String}s or {@link TraceEvent}s, and
+ * {@link Object#toString()} gives the text of both.
+ */
+public abstract class TraceEvent {
+
+	/**
+	 * Milliseconds when the trace happened
+	 */
+	protected final long timestamp;
+
+	private volatile String text;
+
+	protected TraceEvent(long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	/**
+	 * @return an estimate of the length of the text, for the budget of held
+	 *         traces. Must not change
+	 */
+	public abstract int length();
+
+	/**
+	 * @return the text of the trace. Can be called from any thread
+	 */
+	protected abstract String format();
+
+	@Override
+	public String toString() {
+		String text = this.text;
+		if (text == null) {
+			this.text = text = format();
+		}
+		return text;
+	}
+
+	/**
+	 * @return the length of a queued trace, as counted by the budget
+	 */
+	public static int length(Object trace) {
+		return trace instanceof String ? ((String) trace).length()
+				: ((TraceEvent) trace).length();
+	}
+}
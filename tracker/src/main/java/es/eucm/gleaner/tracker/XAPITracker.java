@@ -17,15 +17,17 @@ package es.eucm.gleaner.tracker;
 
 import com.badlogic.gdx.utils.JsonValue;
 import com.badlogic.gdx.utils.JsonWriter.OutputType;
+import com.badlogic.gdx.utils.ObjectIntMap;
 import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.Pool.Poolable;
+import com.badlogic.gdx.utils.StringBuilder;
+import es.eucm.gleaner.tracker.atomic.AtomicReferenceArray;
+import es.eucm.gleaner.tracker.format.FloatFormat;
+import es.eucm.gleaner.tracker.format.IsoDateFormatter;
+import es.eucm.gleaner.tracker.format.JsonArraySerializer;
 import es.eucm.gleaner.tracker.storage.Storage;
 
-import java.util.ArrayList;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
-
 public class XAPITracker extends AbstractTracker {
 
 	public enum Verb {
@@ -136,87 +138,496 @@ public class XAPITracker extends AbstractTracker {
 		}
 	}
 
-	public class Result {
-		Float score;
-		Boolean success;
-		Boolean completion;
-		String response;
-		Map<String, Object> extensions;
+	/**
+	 * Result of a statement. Taken from a pool, and given back once the
+	 * statement is formatted. Extensions are kept in an open addressing table
+	 * with primitive slots, in insertion order, and written straight into the
+	 * statement
+	 */
+	public static class Result implements Poolable {
 
-		public String toString() {
-			String s = "\"result\":{";
-			if (score != null) {
-				s += "\"score\":{\"raw\":" + score + "},";
+		private static final byte FLOAT = 0, INT = 1, BOOLEAN = 2,
+				POSITION = 3, STRING = 4, OBJECT = 5;
+
+		private boolean empty = true;
+
+		private boolean hasScore;
+
+		private float score;
+
+		private Boolean success;
+
+		private Boolean completion;
+
+		private String response;
+
+		/**
+		 * Allocated with the first extension
+		 */
+		private String[] keys;
+
+		private byte[] kinds;
+
+		/**
+		 * Three per slot, for positions
+		 */
+		private float[] floats;
+
+		private int[] ints;
+
+		private Object[] objects;
+
+		/**
+		 * Slots in insertion order
+		 */
+		private int[] order;
+
+		private int size;
+
+		/**
+		 * @return the slot for the given key, claimed if the key is new
+		 */
+		private int slot(String key) {
+			empty = false;
+			if (keys == null) {
+				allocate(16);
+			}
+			int mask = keys.length - 1;
+			int slot = key.hashCode() & mask;
+			String current;
+			while ((current = keys[slot]) != null) {
+				if (current.equals(key)) {
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			if (size + 1 > keys.length / 2) {
+				grow();
+				return slot(key);
+			}
+			keys[slot] = key;
+			if (size == order.length) {
+				int[] newOrder = new int[size * 2];
+				System.arraycopy(order, 0, newOrder, 0, size);
+				order = newOrder;
 			}
+			order[size++] = slot;
+			return slot;
+		}
 
-			if (success != null) {
-				s += "\"success\":" + success + ",";
+		private void grow() {
+			String[] oldKeys = keys;
+			byte[] oldKinds = kinds;
+			float[] oldFloats = floats;
+			int[] oldInts = ints;
+			Object[] oldObjects = objects;
+			int[] oldOrder = order;
+			int oldSize = size;
+			allocate(oldKeys.length * 2);
+			size = 0;
+			for (int i = 0; i < oldSize; i++) {
+				int old = oldOrder[i];
+				int slot = slot(oldKeys[old]);
+				kinds[slot] = oldKinds[old];
+				System.arraycopy(oldFloats, old * 3, floats, slot * 3, 3);
+				ints[slot] = oldInts[old];
+				objects[slot] = oldObjects[old];
 			}
+		}
 
+		private void allocate(int capacity) {
+			keys = new String[capacity];
+			kinds = new byte[capacity];
+			floats = new float[capacity * 3];
+			ints = new int[capacity];
+			objects = new Object[capacity];
+			order = new int[capacity / 2];
+		}
+
+		/**
+		 * @return an estimate of the length of the result in a statement
+		 */
+		int length() {
+			if (empty) {
+				return 0;
+			}
+			int length = 12;
+			if (hasScore) {
+				length += 24;
+			}
+			if (success != null) {
+				length += 16;
+			}
 			if (completion != null) {
-				s += "\"completion\":" + completion + ",";
+				length += 20;
+			}
+			if (response != null) {
+				length += response.length() + 14;
+			}
+			for (int i = 0; i < size; i++) {
+				int slot = order[i];
+				length += keys[slot].length() + 4;
+				switch (kinds[slot]) {
+				case POSITION:
+					length += 36;
+					break;
+				case STRING:
+					length += ((String) objects[slot]).length() + 2;
+					break;
+				case OBJECT:
+					length += ((String) objects[slot]).length();
+					break;
+				default:
+					length += 8;
+				}
 			}
+			return length;
+		}
+
+		void setScore(float score) {
+			empty = false;
+			hasScore = true;
+			this.score = score;
+		}
 
+		void setSuccess(boolean success) {
+			empty = false;
+			this.success = success;
+		}
+
+		void setCompletion(boolean completion) {
+			empty = false;
+			this.completion = completion;
+		}
+
+		void setResponse(String response) {
+			empty = false;
+			this.response = response;
+		}
+
+		void setFloat(String key, float value) {
+			int slot = slot(key);
+			kinds[slot] = FLOAT;
+			floats[slot * 3] = value;
+			objects[slot] = null;
+		}
+
+		void setInt(String key, int value) {
+			int slot = slot(key);
+			kinds[slot] = INT;
+			ints[slot] = value;
+			objects[slot] = null;
+		}
+
+		void setBoolean(String key, boolean value) {
+			int slot = slot(key);
+			kinds[slot] = BOOLEAN;
+			ints[slot] = value ? 1 : 0;
+			objects[slot] = null;
+		}
+
+		void setPosition(String key, float x, float y, float z) {
+			int slot = slot(key);
+			kinds[slot] = POSITION;
+			floats[slot * 3] = x;
+			floats[slot * 3 + 1] = y;
+			floats[slot * 3 + 2] = z;
+			objects[slot] = null;
+		}
+
+		/**
+		 * Strings are written quoted, and the rest with their
+		 * {@link Object#toString()} (null as a JSON null). Kept as text, since
+		 * statements are formatted later
+		 */
+		void setObject(String key, Object value) {
+			int slot = slot(key);
+			kinds[slot] = value instanceof String ? STRING : OBJECT;
+			objects[slot] = String.valueOf(value);
+		}
+
+		/**
+		 * Appends the result, preceded by a comma, if anything was set
+		 */
+		void appendTo(StringBuilder out) {
+			if (empty) {
+				return;
+			}
+			out.append(",\"result\":{");
+			int start = out.length();
+			if (hasScore) {
+				out.append("\"score\":{\"raw\":");
+				FloatFormat.append(out, score);
+				out.append("},");
+			}
+			if (success != null) {
+				out.append("\"success\":").append(success.booleanValue())
+						.append(',');
+			}
+			if (completion != null) {
+				out.append("\"completion\":")
+						.append(completion.booleanValue()).append(',');
+			}
 			if (response != null) {
-				s += "\"response\": \"" + response + "\",";
+				out.append("\"response\":");
+				appendString(out, response);
+				out.append(',');
 			}
+			if (size > 0) {
+				out.append("\"extensions\":{");
+				for (int i = 0; i < size; i++) {
+					int slot = order[i];
+					if (i > 0) {
+						out.append(',');
+					}
+					appendString(out, keys[slot]);
+					out.append(':');
+					appendValue(out, slot);
+				}
+				out.append("},");
+			}
+			if (out.length() > start) {
+				// Last comma
+				out.setLength(out.length() - 1);
+			}
+			out.append('}');
+		}
 
-			if (extensions != null) {
-				s += "\"extensions\":{";
-				for (Entry<String, Object> e : extensions.entrySet()) {
-					s += "\"" + e.getKey() + "\":";
-					if (e.getValue() instanceof String) {
-						s += "\"" + e.getValue() + "\"";
+		private void appendValue(StringBuilder out, int slot) {
+			switch (kinds[slot]) {
+			case FLOAT:
+				FloatFormat.append(out, floats[slot * 3]);
+				break;
+			case INT:
+				out.append(ints[slot]);
+				break;
+			case BOOLEAN:
+				out.append(ints[slot] == 1);
+				break;
+			case POSITION:
+				out.append("{\"x\":");
+				FloatFormat.append(out, floats[slot * 3]);
+				out.append(",\"y\":");
+				FloatFormat.append(out, floats[slot * 3 + 1]);
+				out.append(",\"z\":");
+				FloatFormat.append(out, floats[slot * 3 + 2]);
+				out.append('}');
+				break;
+			case STRING:
+				appendString(out, (String) objects[slot]);
+				break;
+			default:
+				out.append((String) objects[slot]);
+			}
+		}
+
+		private static void appendString(StringBuilder out, String value) {
+			out.append('"');
+			for (int i = 0; i < value.length(); i++) {
+				char c = value.charAt(i);
+				switch (c) {
+				case '"':
+					out.append("\\\"");
+					break;
+				case '\\':
+					out.append("\\\\");
+					break;
+				case '\n':
+					out.append("\\n");
+					break;
+				case '\r':
+					out.append("\\r");
+					break;
+				case '\t':
+					out.append("\\t");
+					break;
+				default:
+					if (c < 0x20) {
+						out.append("\\u00").append(HEX[c >> 4])
+								.append(HEX[c & 0xF]);
 					} else {
-						s += e.getValue().toString();
+						out.append(c);
 					}
-					s += ",";
 				}
-				s = s.substring(0, s.length() - 1) + "},";
 			}
-			return s.substring(0, s.length() - 1) + "},";
+			out.append('"');
+		}
+
+		@Override
+		public void reset() {
+			for (int i = 0; i < size; i++) {
+				int slot = order[i];
+				keys[slot] = null;
+				objects[slot] = null;
+			}
+			size = 0;
+			empty = true;
+			hasScore = false;
+			success = null;
+			completion = null;
+			response = null;
 		}
 	}
 
-	private Result result;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static final String[] EXTENSIONS = new String[Extension.values().length];
+
+	static {
+		for (Extension extension : Extension.values()) {
+			EXTENSIONS[extension.ordinal()] = extension.toString();
+		}
+	}
+
+	/**
+	 * Statements waiting to be reused. Taken and given back with a compare
+	 * and set on each slot, so producers never wait for each other
+	 */
+	private final AtomicReferenceArray<Statement> statements = new AtomicReferenceArray<Statement>(
+			8);
+
+	/**
+	 * Results given back once their statements are formatted. Guarded by
+	 * itself
+	 */
+	final Pool<Result> results = new Pool<Result>(8, 64) {
+		@Override
+		protected Result newObject() {
+			return new Result();
+		}
+	};
+
+	/**
+	 * For the statements built with the setters of the tracker. Guarded by
+	 * itself
+	 */
+	private final Statement shared = new Statement();
 
-	private String actor;
+	private volatile Vocabulary vocabulary = new Vocabulary();
 
-	private String objectId;
+	private volatile boolean millisecondTimestamps;
 
-	private Date date = new Date();
+	/**
+	 * Formats every statement, when its text is needed. Guarded by
+	 * {@link #timestamps}
+	 */
+	private final StringBuilder builder = new StringBuilder(512);
+
+	private final IsoDateFormatter timestamps = new IsoDateFormatter(false);
 
 	public XAPITracker(Storage storage) {
-		super(storage);
+		this(storage, -1);
 	}
 
 	public XAPITracker(Storage storage, float flushInterval) {
-		super(storage, flushInterval);
+		super(storage, new JsonArraySerializer(), flushInterval);
+		Vocabulary vocabulary = this.vocabulary;
+		for (Verb verb : Verb.values()) {
+			vocabulary.verbs.put(verb, verbFragment(verb.toString()));
+		}
+		registerTypes(vocabulary, Completable.values());
+		registerTypes(vocabulary, Accessible.values());
+		registerTypes(vocabulary, Alternative.values());
+		registerTypes(vocabulary, GameObject.values());
+		vocabulary.priorities.put(Verb.INITIALIZED, PRIORITY_HIGH);
+		vocabulary.priorities.put(Verb.COMPLETED, PRIORITY_HIGH);
+	}
+
+	private void registerTypes(Vocabulary vocabulary, Object[] values) {
+		for (Object type : values) {
+			vocabulary.types.put(type, typeFragment(type.toString()));
+		}
+	}
+
+	/**
+	 * Sets the priority of the statements with the given verb. By default,
+	 * {@link Verb#INITIALIZED} and {@link Verb#COMPLETED} have
+	 * {@link #PRIORITY_HIGH} and the rest {@link #PRIORITY_NORMAL}
+	 */
+	public synchronized void setPriority(Verb verb, int priority) {
+		Vocabulary copy = new Vocabulary(vocabulary);
+		copy.priorities.put(verb, priority);
+		vocabulary = copy;
+	}
+
+	/**
+	 * Registers a verb defined by the game, to be used in
+	 * {@link #statement(String, String, String)}
+	 * 
+	 * @param iri
+	 *            id of the verb
+	 */
+	public synchronized void registerVerb(String iri, int priority) {
+		Vocabulary copy = new Vocabulary(vocabulary);
+		copy.verbs.put(iri, verbFragment(iri));
+		copy.priorities.put(iri, priority);
+		vocabulary = copy;
+	}
+
+	/**
+	 * Registers an activity type defined by the game, to be used in
+	 * {@link #statement(String, String, String)}
+	 * 
+	 * @param iri
+	 *            id of the activity type
+	 */
+	public synchronized void registerActivityType(String iri) {
+		Vocabulary copy = new Vocabulary(vocabulary);
+		copy.types.put(iri, typeFragment(iri));
+		vocabulary = copy;
+	}
+
+	/**
+	 * Sets if statement timestamps have milliseconds. False by default
+	 */
+	public void setMillisecondTimestamps(boolean milliseconds) {
+		this.millisecondTimestamps = milliseconds;
 	}
 
 	public boolean isReady() {
-		return actor != null;
+		return vocabulary.actor != null;
 	}
 
 	public void startData(ObjectMap data) {
-		actor = ((JsonValue) data.get("actor")).prettyPrint(OutputType.json, 0);
-		objectId = (String) data.get("objectId");
+		String actor = ((JsonValue) data.get("actor")).prettyPrint(
+				OutputType.json, 0);
+		String objectId = (String) data.get("objectId");
 		if (!objectId.endsWith("/")) {
 			objectId += "/";
 		}
+		synchronized (this) {
+			Vocabulary copy = new Vocabulary(vocabulary);
+			copy.actor = actor;
+			copy.head = "{\"actor\":" + actor + ",";
+			copy.objectId = objectId;
+			vocabulary = copy;
+		}
 	}
 
-	public String serialize(ArrayList<String> traces) {
-		String statements = "[";
-		for (String trace : traces) {
-			statements += trace + ",";
+	/**
+	 * @return a statement to be filled and sent by the calling thread. Unlike
+	 *         the setters of the tracker, statements built this way are never
+	 *         mixed with the ones of other threads
+	 */
+	public Statement statement() {
+		for (int i = 0; i < statements.length(); i++) {
+			Statement statement = statements.get(i);
+			if (statement != null
+					&& statements.compareAndSet(i, statement, null)) {
+				return statement;
+			}
 		}
-		return statements.substring(0, statements.length() - 1) + "]";
+		return new Statement();
 	}
 
-	@Override
-	public String contentType() {
-		return "application/json; charset=utf-8";
+	private void free(Statement statement) {
+		statement.reset();
+		for (int i = 0; i < statements.length(); i++) {
+			if (statements.get(i) == null
+					&& statements.compareAndSet(i, null, statement)) {
+				return;
+			}
+		}
 	}
 
 	public void initialized(String id, Completable type) {
@@ -224,8 +635,10 @@ public class XAPITracker extends AbstractTracker {
 	}
 
 	public void progressed(String id, Completable type, float progress) {
-		setProgress(progress);
-		statement(Verb.PROGRESSED, id, type);
+		synchronized (shared) {
+			shared.progress(progress);
+			statement(Verb.PROGRESSED, id, type);
+		}
 	}
 
 	public void completed(String id, Completable type) {
@@ -233,15 +646,18 @@ public class XAPITracker extends AbstractTracker {
 	}
 
 	public void completed(String id, Completable type, boolean success) {
-		setSuccess(success);
-		statement(Verb.COMPLETED, id, type);
+		synchronized (shared) {
+			shared.success(success);
+			statement(Verb.COMPLETED, id, type);
+		}
 	}
 
 	public void completed(String id, Completable type, boolean success,
 			boolean completion, float score) {
-		setCompletion(completion);
-		setScore(score);
-		completed(id, type, success);
+		synchronized (shared) {
+			shared.completion(completion).score(score);
+			completed(id, type, success);
+		}
 	}
 
 	public void accessed(String id, Accessible type) {
@@ -254,14 +670,18 @@ public class XAPITracker extends AbstractTracker {
 
 	public void selected(String alternative, Alternative type,
 			String selectedOption) {
-		setResponse(selectedOption);
-		statement(Verb.SELECTED, alternative, type);
+		synchronized (shared) {
+			shared.response(selectedOption);
+			statement(Verb.SELECTED, alternative, type);
+		}
 	}
 
 	public void unlocked(String alternative, Alternative type,
 			String unlockedOption) {
-		setResponse(unlockedOption);
-		statement(Verb.UNLOCKED, alternative, type);
+		synchronized (shared) {
+			shared.response(unlockedOption);
+			statement(Verb.UNLOCKED, alternative, type);
+		}
 	}
 
 	public void interacted(String id, GameObject type) {
@@ -272,97 +692,391 @@ public class XAPITracker extends AbstractTracker {
 		statement(Verb.USED, id, type);
 	}
 
-	private Result result() {
-		if (result == null) {
-			result = new Result();
-		}
-		return result;
-	}
-
 	public void setSuccess(boolean success) {
-		result().success = success;
+		synchronized (shared) {
+			shared.success(success);
+		}
 	}
 
 	public void setScore(float score) {
-		result().score = score;
+		synchronized (shared) {
+			shared.score(score);
+		}
 	}
 
 	public void setResponse(String response) {
-		result().response = response;
+		synchronized (shared) {
+			shared.response(response);
+		}
 	}
 
 	public void setCompletion(boolean completion) {
-		result().completion = completion;
+		synchronized (shared) {
+			shared.completion(completion);
+		}
 	}
 
 	public void setProgress(float progress) {
-		setExtension(Extension.PROGRESS, progress);
+		synchronized (shared) {
+			shared.progress(progress);
+		}
 	}
 
 	public void setPosition(float x, float y, float z) {
-		setExtension(Extension.POSITION, "{\"x\":" + x + ", \"y\": " + y
-				+ ", \"z\": " + z + "}");
+		synchronized (shared) {
+			shared.position(x, y, z);
+		}
 	}
 
 	public void setHealth(float health) {
-		setExtension(Extension.HEALTH, health);
+		synchronized (shared) {
+			shared.health(health);
+		}
 	}
 
 	public void setVar(String id, Object value) {
 		setExtension(id, value);
 	}
 
+	public void setVar(String id, float value) {
+		setExtension(id, value);
+	}
+
+	public void setVar(String id, int value) {
+		setExtension(id, value);
+	}
+
+	public void setVar(String id, boolean value) {
+		setExtension(id, value);
+	}
+
 	public void setExtension(Extension key, Object value) {
-		setExtension(key.toString(), value);
+		setExtension(EXTENSIONS[key.ordinal()], value);
+	}
+
+	public void setExtension(Extension key, float value) {
+		setExtension(EXTENSIONS[key.ordinal()], value);
 	}
 
 	public void setExtension(String key, Object value) {
-		Map<String, Object> extensions = result().extensions;
-		if (extensions == null) {
-			result().extensions = extensions = new HashMap<String, Object>();
+		synchronized (shared) {
+			shared.extension(key, value);
 		}
-		extensions.put(key, value);
 	}
 
-	private void statement(Verb verb, String activityId, Object activityType) {
-		date.setTime(System.currentTimeMillis());
-		String statement = "{\"actor\":" + actor + ","
-				+ createVerb(verb.toString()) + ","
-				+ createObject(activityId, activityType.toString())
-				+ ",\"timestamp\":\"" + toISODateString(date) + "\"";
+	public void setExtension(String key, float value) {
+		synchronized (shared) {
+			shared.extension(key, value);
+		}
+	}
 
-		if (result != null) {
-			statement += "," + result.toString();
+	public void setExtension(String key, int value) {
+		synchronized (shared) {
+			shared.extension(key, value);
 		}
-		// Clear accumulated result
-		result = null;
+	}
 
-		statement += "}";
-		connect();
-		addTrace(statement);
+	public void setExtension(String key, boolean value) {
+		synchronized (shared) {
+			shared.extension(key, value);
+		}
 	}
 
-	private String createVerb(String id) {
-		return "\"verb\":{\"id\":\"" + id + "\"}";
+	/**
+	 * Adds a statement with a verb and an activity type registered with
+	 * {@link #registerVerb(String, int)} and
+	 * {@link #registerActivityType(String)}, and the result set with the
+	 * setters
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if the verb or the type are not registered
+	 */
+	public void statement(String verb, String activityId, String activityType) {
+		statement((Object) verb, activityId, (Object) activityType);
 	}
 
-	private String createObject(String id, String type) {
-		return "\"object\":{\"id\":\"" + objectId + id
-				+ "\",\"definition\":{\"type\":\"" + type + "\"}}";
+	private void statement(Object verb, String activityId, Object activityType) {
+		StatementEvent statement;
+		synchronized (shared) {
+			statement = event(shared, verb, activityId, activityType);
+		}
+		addTrace(statement, statement.vocabulary.priorities.get(verb,
+				PRIORITY_NORMAL));
 	}
 
-	private String pad(int n) {
-		return n < 10 ? "0" + n : n + "";
+	/**
+	 * Creates the statement, taking the result of the given context, and
+	 * resets the context
+	 */
+	private StatementEvent event(Statement context, Object verb,
+			String activityId, Object activityType) {
+		Vocabulary vocabulary = this.vocabulary;
+		String verbFragment = vocabulary.verbs.get(verb);
+		String typeFragment = vocabulary.types.get(activityType);
+		if (verbFragment == null || typeFragment == null) {
+			context.reset();
+			throw new IllegalArgumentException("Unregistered "
+					+ (verbFragment == null ? "verb " + verb : "activity type "
+							+ activityType));
+		}
+		Result result = null;
+		if (!context.result.empty) {
+			result = context.result;
+			synchronized (results) {
+				context.result = results.obtain();
+			}
+		}
+		context.reset();
+		return new StatementEvent(vocabulary, verbFragment, activityId,
+				typeFragment, millisecondTimestamps, result);
 	}
 
-	private String toISODateString(Date d) {
-		int year = d.getYear();
+	/**
+	 * A statement being built by one thread, obtained with
+	 * {@link XAPITracker#statement()}. It is reused once sent, so it must not
+	 * be touched afterwards
+	 */
+	public class Statement implements Poolable {
+
+		private Result result = new Result();
 
-		if (year < 2000) {
-			year += 1900;
+		public Statement score(float score) {
+			result.setScore(score);
+			return this;
 		}
-		return year + "-" + pad(d.getMonth() + 1) + "-" + pad(d.getDate())
-				+ "T" + pad(d.getHours()) + ":" + pad(d.getMinutes()) + ":"
-				+ pad(d.getSeconds()) + "Z";
+
+		public Statement success(boolean success) {
+			result.setSuccess(success);
+			return this;
+		}
+
+		public Statement completion(boolean completion) {
+			result.setCompletion(completion);
+			return this;
+		}
+
+		public Statement response(String response) {
+			result.setResponse(response);
+			return this;
+		}
+
+		public Statement progress(float progress) {
+			return extension(Extension.PROGRESS, progress);
+		}
+
+		public Statement health(float health) {
+			return extension(Extension.HEALTH, health);
+		}
+
+		public Statement position(float x, float y, float z) {
+			result.setPosition(EXTENSIONS[Extension.POSITION.ordinal()], x, y,
+					z);
+			return this;
+		}
+
+		public Statement extension(Extension key, float value) {
+			result.setFloat(EXTENSIONS[key.ordinal()], value);
+			return this;
+		}
+
+		public Statement extension(Extension key, Object value) {
+			result.setObject(EXTENSIONS[key.ordinal()], value);
+			return this;
+		}
+
+		public Statement extension(String key, float value) {
+			result.setFloat(key, value);
+			return this;
+		}
+
+		public Statement extension(String key, int value) {
+			result.setInt(key, value);
+			return this;
+		}
+
+		public Statement extension(String key, boolean value) {
+			result.setBoolean(key, value);
+			return this;
+		}
+
+		public Statement extension(String key, Object value) {
+			result.setObject(key, value);
+			return this;
+		}
+
+		/**
+		 * Adds the statement to the tracker
+		 */
+		public void send(Verb verb, String activityId, Object activityType) {
+			send((Object) verb, activityId, activityType);
+		}
+
+		/**
+		 * Adds the statement to the tracker, with a verb and an activity type
+		 * registered with {@link #registerVerb(String, int)} and
+		 * {@link #registerActivityType(String)}
+		 * 
+		 * @throws IllegalArgumentException
+		 *             if the verb or the type are not registered
+		 */
+		public void send(String verb, String activityId, String activityType) {
+			send((Object) verb, activityId, (Object) activityType);
+		}
+
+		private void send(Object verb, String activityId, Object activityType) {
+			StatementEvent statement;
+			try {
+				statement = event(this, verb, activityId, activityType);
+			} finally {
+				free(this);
+			}
+			addTrace(statement, statement.vocabulary.priorities.get(verb,
+					PRIORITY_NORMAL));
+		}
+
+		@Override
+		public void reset() {
+			result.reset();
+		}
+	}
+
+	/**
+	 * A statement waiting to be formatted, with the fragments of the
+	 * vocabulary it was created with
+	 */
+	private class StatementEvent extends TraceEvent {
+
+		private final Vocabulary vocabulary;
+
+		private final String verbFragment;
+
+		private final String activityId;
+
+		private final String typeFragment;
+
+		private final boolean withMillis;
+
+		private final int length;
+
+		/**
+		 * Null if the statement has no result, or once it is formatted.
+		 * Guarded by {@link #timestamps}
+		 */
+		private Result result;
+
+		/**
+		 * Guarded by {@link #timestamps}
+		 */
+		private String text;
+
+		StatementEvent(Vocabulary vocabulary, String verbFragment,
+				String activityId, String typeFragment, boolean withMillis,
+				Result result) {
+			super(System.currentTimeMillis());
+			this.vocabulary = vocabulary;
+			this.verbFragment = verbFragment;
+			this.activityId = activityId;
+			this.typeFragment = typeFragment;
+			this.withMillis = withMillis;
+			this.result = result;
+			// Timestamp, closing quote and brace
+			int length = vocabulary.head.length() + verbFragment.length()
+					+ activityId.length() + typeFragment.length() + 26;
+			if (vocabulary.objectId != null) {
+				length += vocabulary.objectId.length();
+			}
+			this.length = result == null ? length : length + result.length();
+		}
+
+		@Override
+		public int length() {
+			return length;
+		}
+
+		@Override
+		protected String format() {
+			synchronized (timestamps) {
+				if (text != null) {
+					// Formatted by another thread, that gave back the result
+					return text;
+				}
+				builder.setLength(0);
+				builder.append(vocabulary.head).append(verbFragment)
+						.append(vocabulary.objectId).append(activityId)
+						.append(typeFragment);
+				timestamps.setWithMillis(withMillis);
+				timestamps.append(builder, timestamp);
+				builder.append('"');
+				if (result != null) {
+					result.appendTo(builder);
+					synchronized (results) {
+						results.free(result);
+					}
+					result = null;
+				}
+				builder.append('}');
+				text = builder.toString();
+				return text;
+			}
+		}
+	}
+
+	/**
+	 * Encoded fragments of the statements. Replaced as a whole when anything
+	 * changes, so statements are built without locks
+	 */
+	private static class Vocabulary {
+
+		private String actor;
+
+		/**
+		 * Start of every statement, up to the verb. Statements added before
+		 * {@link XAPITracker#startData(ObjectMap)} have a null actor
+		 */
+		private String head = "{\"actor\":null,";
+
+		private String objectId;
+
+		/**
+		 * By verb or activity type (the enum constant or the IRI of a
+		 * registered one). Verbs go from the verb to the start of the object
+		 * id, and types from the end of the object id to the start of the
+		 * timestamp
+		 */
+		private final ObjectMap<Object, String> verbs;
+
+		private final ObjectMap<Object, String> types;
+
+		private final ObjectIntMap<Object> priorities;
+
+		Vocabulary() {
+			verbs = new ObjectMap<Object, String>();
+			types = new ObjectMap<Object, String>();
+			priorities = new ObjectIntMap<Object>();
+		}
+
+		Vocabulary(Vocabulary vocabulary) {
+			actor = vocabulary.actor;
+			head = vocabulary.head;
+			objectId = vocabulary.objectId;
+			verbs = new ObjectMap<Object, String>();
+			verbs.putAll(vocabulary.verbs);
+			types = new ObjectMap<Object, String>();
+			types.putAll(vocabulary.types);
+			priorities = new ObjectIntMap<Object>();
+			for (ObjectIntMap.Entry<Object> entry : vocabulary.priorities
+					.entries()) {
+				priorities.put(entry.key, entry.value);
+			}
+		}
+	}
+
+	private static String verbFragment(String iri) {
+		return "\"verb\":{\"id\":\"" + iri + "\"},\"object\":{\"id\":\"";
+	}
+
+	private static String typeFragment(String iri) {
+		return "\",\"definition\":{\"type\":\"" + iri
+				+ "\"}},\"timestamp\":\"";
 	}
 }
@@ -0,0 +1,31 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.atomic;
+
+/**
+ * A {@link java.util.concurrent.atomic.AtomicLong}. GWT has no atomics, so
+ * its version of this class (in the emu folder of the module) is a plain
+ * field
+ */
+public class AtomicLong extends java.util.concurrent.atomic.AtomicLong {
+
+	public AtomicLong(long initialValue) {
+		super(initialValue);
+	}
+
+	public AtomicLong() {
+	}
+}
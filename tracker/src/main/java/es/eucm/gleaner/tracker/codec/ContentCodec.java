@@ -0,0 +1,38 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.codec;
+
+import com.badlogic.gdx.utils.Disposable;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+
+/**
+ * Encodes the payloads sent by {@link es.eucm.gleaner.tracker.storage.NetStorage}
+ * (e.g., compressing them). Codecs are not thread-safe: the storage calls
+ * them from a single thread
+ */
+public interface ContentCodec extends Disposable {
+
+	/**
+	 * @return the value for the Content-Encoding header of the encoded
+	 *         payloads
+	 */
+	String contentEncoding();
+
+	/**
+	 * Writes the encoded contents of in into out
+	 */
+	void encode(TraceBuffer in, TraceBuffer out);
+}
@@ -0,0 +1,78 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.codec;
+
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+
+import java.util.zip.Deflater;
+
+/**
+ * Compresses payloads in the zlib format (Content-Encoding: deflate),
+ * optionally with a preset dictionary. The collector must inflate them with
+ * the same dictionary, identified by its Adler-32 in the zlib header. See
+ * {@link XAPIDictionary}
+ */
+public class DeflateCodec implements ContentCodec {
+
+	private final Deflater deflater;
+
+	private final byte[] dictionary;
+
+	private final byte[] chunk = new byte[8192];
+
+	public DeflateCodec() {
+		this(Deflater.DEFAULT_COMPRESSION, null);
+	}
+
+	/**
+	 * @param level
+	 *            compression level, from 0 to 9
+	 * @param dictionary
+	 *            preset dictionary. Can be null
+	 */
+	public DeflateCodec(int level, byte[] dictionary) {
+		this.deflater = new Deflater(level);
+		this.dictionary = dictionary;
+	}
+
+	@Override
+	public String contentEncoding() {
+		return "deflate";
+	}
+
+	@Override
+	public void encode(TraceBuffer in, TraceBuffer out) {
+		deflater.reset();
+		if (dictionary != null) {
+			deflater.setDictionary(dictionary);
+		}
+		deflate(deflater, in, out, chunk);
+	}
+
+	@Override
+	public void dispose() {
+		deflater.end();
+	}
+
+	static void deflate(Deflater deflater, TraceBuffer in, TraceBuffer out,
+			byte[] chunk) {
+		deflater.setInput(in.getBytes(), 0, in.size());
+		deflater.finish();
+		while (!deflater.finished()) {
+			out.append(chunk, 0, deflater.deflate(chunk));
+		}
+	}
+}
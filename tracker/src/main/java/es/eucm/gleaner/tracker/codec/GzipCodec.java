@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.codec;
+
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses payloads in the gzip format (Content-Encoding: gzip). Unlike
+ * {@link java.util.zip.GZIPOutputStream}, it reuses its deflater between
+ * payloads
+ */
+public class GzipCodec implements ContentCodec {
+
+	private static final byte[] HEADER = { 0x1f, (byte) 0x8b,
+			Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+	private final Deflater deflater;
+
+	private final CRC32 crc = new CRC32();
+
+	private final byte[] chunk = new byte[8192];
+
+	public GzipCodec() {
+		this(Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * @param level
+	 *            compression level, from 0 to 9
+	 */
+	public GzipCodec(int level) {
+		this.deflater = new Deflater(level, true);
+	}
+
+	@Override
+	public String contentEncoding() {
+		return "gzip";
+	}
+
+	@Override
+	public void encode(TraceBuffer in, TraceBuffer out) {
+		deflater.reset();
+		crc.reset();
+		crc.update(in.getBytes(), 0, in.size());
+
+		out.append(HEADER, 0, HEADER.length);
+		DeflateCodec.deflate(deflater, in, out, chunk);
+		writeInt(out, (int) crc.getValue());
+		writeInt(out, in.size());
+	}
+
+	private void writeInt(TraceBuffer out, int value) {
+		out.append((byte) value);
+		out.append((byte) (value >> 8));
+		out.append((byte) (value >> 16));
+		out.append((byte) (value >> 24));
+	}
+
+	@Override
+	public void dispose() {
+		deflater.end();
+	}
+}
@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.codec;
+
+import com.badlogic.gdx.utils.StringBuilder;
+import es.eucm.gleaner.tracker.XAPITracker.Accessible;
+import es.eucm.gleaner.tracker.XAPITracker.Alternative;
+import es.eucm.gleaner.tracker.XAPITracker.Completable;
+import es.eucm.gleaner.tracker.XAPITracker.Extension;
+import es.eucm.gleaner.tracker.XAPITracker.GameObject;
+import es.eucm.gleaner.tracker.XAPITracker.Verb;
+
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Preset dictionary for {@link DeflateCodec} with the vocabulary of
+ * {@link es.eucm.gleaner.tracker.XAPITracker} statements: JSON keys and
+ * verb, activity type and extension IRIs. It only depends on that
+ * vocabulary, so the collector can build the same dictionary
+ */
+public class XAPIDictionary {
+
+	private static byte[] dictionary;
+
+	/**
+	 * @return the dictionary. Must not be modified
+	 */
+	public static synchronized byte[] get() {
+		if (dictionary == null) {
+			dictionary = build();
+		}
+		return dictionary;
+	}
+
+	private static byte[] build() {
+		// Deflate codes strings near the end of the dictionary with shorter
+		// distances, so the most frequent go last
+		StringBuilder sb = new StringBuilder();
+		sb.append("\"response\":\"\",\"success\":true,\"completion\":false,");
+		sb.append("\"score\":{\"raw\":\"extensions\":{\"result\":{");
+		sb.append("{\"x\":, \"y\": , \"z\": }");
+		for (Extension extension : Extension.values()) {
+			sb.append('"').append(extension.toString()).append("\":");
+		}
+		appendAll(sb, GameObject.values());
+		appendAll(sb, Alternative.values());
+		appendAll(sb, Completable.values());
+		appendAll(sb, Accessible.values());
+		appendAll(sb, Verb.values());
+		sb.append("\"actor\":{\"name\":\"\",\"account\":{\"homePage\":\"");
+		sb.append("\"mbox\":\"mailto:");
+		sb.append("\"},\"object\":{\"id\":\"");
+		sb.append("\",\"definition\":{\"type\":\"");
+		sb.append("\"}},\"timestamp\":\"");
+		sb.append("T00:00:00Z\"},{\"actor\":{");
+		sb.append("\"verb\":{\"id\":\"");
+		try {
+			return sb.toString().getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static void appendAll(StringBuilder sb, Object[] iris) {
+		for (Object iri : iris) {
+			sb.append('"').append(iri.toString()).append('"');
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+import com.badlogic.gdx.utils.IntArray;
+
+import java.io.UnsupportedEncodingException;
+
+import static es.eucm.gleaner.tracker.format.BinaryFormat.*;
+
+/**
+ * Turns payloads written by {@link BinarySerializer} back into CSV lines or
+ * JSON arrays of xAPI statements. The input can be several payloads one
+ * after the other, as in a {@link es.eucm.gleaner.tracker.storage.LocalStorage}
+ * file: text between payloads (such as the session line) is copied as it
+ * is.
+ * 
+ * Strings are copied as UTF-8 bytes, never decoded. Not thread safe.
+ */
+public class BinaryDecoder {
+
+	private static final byte[][] DICTIONARY_BYTES = new byte[DICTIONARY.size][];
+
+	private static final byte[] ACTOR_BYTES = bytes(ACTOR);
+
+	private static final byte[] VERB_BYTES = bytes(VERB);
+
+	private static final byte[] OBJECT_BYTES = bytes(OBJECT);
+
+	private static final byte[] TYPE_BYTES = bytes(TYPE);
+
+	private static final byte[] TIMESTAMP_BYTES = bytes(TIMESTAMP);
+
+	static {
+		for (int i = 0; i < DICTIONARY.size; i++) {
+			DICTIONARY_BYTES[i] = bytes(DICTIONARY.get(i));
+		}
+	}
+
+	/**
+	 * Offset and length in the input of the strings of the current payload
+	 */
+	private final IntArray table = new IntArray();
+
+	private final IsoDateFormatter seconds = new IsoDateFormatter(false);
+
+	private final IsoDateFormatter millis = new IsoDateFormatter(true);
+
+	private byte[] in;
+
+	private int position;
+
+	private long previous;
+
+	/**
+	 * Decodes the given bytes into out
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a payload is malformed
+	 */
+	public void decode(byte[] bytes, int offset, int length, TraceBuffer out) {
+		in = bytes;
+		position = offset;
+		int end = offset + length;
+		try {
+			while (position < end) {
+				if (in[position] == MAGIC) {
+					payload(out);
+				} else {
+					int start = position;
+					while (position < end && in[position++] != '\n') {
+					}
+					out.append(in, start, position - start);
+				}
+			}
+		} catch (ArrayIndexOutOfBoundsException e) {
+			throw new IllegalArgumentException("Truncated payload");
+		} finally {
+			in = null;
+		}
+		if (position != end) {
+			throw new IllegalArgumentException("Truncated payload");
+		}
+	}
+
+	public void decode(TraceBuffer in, TraceBuffer out) {
+		decode(in.getBytes(), 0, in.size(), out);
+	}
+
+	private void payload(TraceBuffer out) {
+		position++;
+		if (in[position++] != VERSION) {
+			throw new IllegalArgumentException("Unknown version "
+					+ in[position - 1]);
+		}
+		boolean jsonArray = in[position++] == JSON_ARRAY;
+		table.clear();
+		previous = 0;
+		if (jsonArray) {
+			out.append('[');
+		}
+		boolean first = true;
+		byte tag;
+		while ((tag = in[position++]) != END) {
+			if (jsonArray && !first) {
+				out.append(',');
+			}
+			first = false;
+			switch (tag) {
+			case CSV:
+				out.append(Long.toString(timestamp()));
+				int fields = varint();
+				for (int i = 0; i < fields; i++) {
+					out.append(',');
+					token(out);
+				}
+				break;
+			case XAPI_SECONDS:
+			case XAPI_MILLIS:
+				long time = timestamp();
+				out.append(ACTOR_BYTES, 0, ACTOR_BYTES.length);
+				token(out);
+				out.append(VERB_BYTES, 0, VERB_BYTES.length);
+				token(out);
+				out.append(OBJECT_BYTES, 0, OBJECT_BYTES.length);
+				token(out);
+				token(out);
+				out.append(TYPE_BYTES, 0, TYPE_BYTES.length);
+				token(out);
+				out.append(TIMESTAMP_BYTES, 0, TIMESTAMP_BYTES.length);
+				(tag == XAPI_MILLIS ? millis : seconds).append(out, time);
+				out.append('"');
+				token(out);
+				out.append('}');
+				break;
+			case RAW:
+				token(out);
+				break;
+			default:
+				throw new IllegalArgumentException("Unknown record " + tag);
+			}
+			if (!jsonArray) {
+				out.append('\n');
+			}
+			out.traceWritten();
+		}
+		if (jsonArray) {
+			out.append(']');
+		}
+	}
+
+	private long timestamp() {
+		long zigZag = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in[position++];
+			zigZag |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		previous += (zigZag >>> 1) ^ -(zigZag & 1);
+		return previous;
+	}
+
+	private int varint() {
+		int value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in[position++];
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+	private void token(TraceBuffer out) {
+		int token = varint();
+		if (token == 0) {
+			int length = varint();
+			if (position + length > in.length) {
+				throw new IllegalArgumentException("Truncated payload");
+			}
+			table.add(position);
+			table.add(length);
+			out.append(in, position, length);
+			position += length;
+		} else if (token <= DICTIONARY_BYTES.length) {
+			byte[] value = DICTIONARY_BYTES[token - 1];
+			out.append(value, 0, value.length);
+		} else {
+			int index = (token - 1 - DICTIONARY_BYTES.length) * 2;
+			if (index + 1 >= table.size) {
+				throw new IllegalArgumentException("Unknown string " + token);
+			}
+			out.append(in, table.get(index), table.get(index + 1));
+		}
+	}
+
+	private static byte[] bytes(String s) {
+		try {
+			return s.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
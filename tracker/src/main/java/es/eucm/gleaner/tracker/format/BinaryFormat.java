@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+import es.eucm.gleaner.tracker.XAPITracker.Accessible;
+import es.eucm.gleaner.tracker.XAPITracker.Alternative;
+import es.eucm.gleaner.tracker.XAPITracker.Completable;
+import es.eucm.gleaner.tracker.XAPITracker.Extension;
+import es.eucm.gleaner.tracker.XAPITracker.GameObject;
+import es.eucm.gleaner.tracker.XAPITracker.Verb;
+
+/**
+ * Constants shared by {@link BinarySerializer} and {@link BinaryDecoder}.
+ * 
+ * A payload is the {@link #MAGIC} byte, the {@link #VERSION}, the framing of
+ * its text form ({@link #LINES} or {@link #JSON_ARRAY}), and a sequence of
+ * records ended by {@link #END}. Each record starts with its tag:
+ * <ul>
+ * <li>{@link #CSV}: timestamp, number of fields and the fields</li>
+ * <li>{@link #XAPI_SECONDS} and {@link #XAPI_MILLIS}: timestamp, actor, verb,
+ * object id (split in prefix and local id), activity type and the rest of
+ * the statement (the result, if any)</li>
+ * <li>{@link #RAW}: the whole trace</li>
+ * </ul>
+ * Timestamps are zig-zag varints, as the difference with the previous
+ * timestamp of the payload. Strings are varint tokens: 0 is followed by a
+ * length prefixed UTF-8 literal, which is added to the table of the payload;
+ * 1 to n are entries of the {@link #DICTIONARY}; and the rest are entries of
+ * the table of the payload.
+ */
+class BinaryFormat {
+
+	/**
+	 * Never valid in UTF-8, so payloads are told apart from text lines
+	 */
+	static final byte MAGIC = (byte) 0xC1;
+
+	static final byte VERSION = 1;
+
+	static final byte LINES = 0;
+
+	static final byte JSON_ARRAY = 1;
+
+	static final byte END = 0;
+
+	static final byte CSV = 1;
+
+	static final byte XAPI_SECONDS = 2;
+
+	static final byte XAPI_MILLIS = 3;
+
+	static final byte RAW = 4;
+
+	static final String ACTOR = "{\"actor\":";
+
+	static final String VERB = ",\"verb\":{\"id\":\"";
+
+	static final String OBJECT = "\"},\"object\":{\"id\":\"";
+
+	static final String TYPE = "\",\"definition\":{\"type\":\"";
+
+	static final String TIMESTAMP = "\"}},\"timestamp\":\"";
+
+	/**
+	 * Strings coded with a single byte. Part of the format: entries can only
+	 * be added at the end, with a new {@link #VERSION}
+	 */
+	static final Array<String> DICTIONARY = new Array<String>();
+
+	static final ObjectIntMap<String> INDICES = new ObjectIntMap<String>();
+
+	static {
+		add("");
+		add("\"");
+		// Events of CsvTracker
+		add("started");
+		add("completed");
+		add("selected");
+		add("set");
+		add("increased");
+		add("decreased");
+		add("screen");
+		add("zone");
+		add("click");
+		addAll(Verb.values());
+		addAll(Completable.values());
+		addAll(Accessible.values());
+		addAll(Alternative.values());
+		addAll(GameObject.values());
+		addAll(Extension.values());
+	}
+
+	private static void addAll(Object[] values) {
+		for (Object value : values) {
+			add(value.toString());
+		}
+	}
+
+	private static void add(String value) {
+		INDICES.put(value, DICTIONARY.size);
+		DICTIONARY.add(value);
+	}
+}
@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.ObjectIntMap;
+
+import static es.eucm.gleaner.tracker.format.BinaryFormat.*;
+
+/**
+ * Compact binary encoding of the traces of {@link es.eucm.gleaner.tracker.CsvTracker}
+ * and {@link es.eucm.gleaner.tracker.XAPITracker} (see {@link BinaryFormat}).
+ * Traces with an unexpected shape are kept as they are, so any trace can be
+ * written. As a serializer, it works with any
+ * {@link es.eucm.gleaner.tracker.storage.Storage}. {@link BinaryDecoder}
+ * gives back the text the CSV or JSON array serializer would have written.
+ */
+public class BinarySerializer implements TraceSerializer {
+
+	public static final String CONTENT_TYPE = "application/x-gleaner-traces";
+
+	private final boolean jsonArray;
+
+	/**
+	 * Strings written in the current payload, with their index
+	 */
+	private final ObjectIntMap<String> table = new ObjectIntMap<String>();
+
+	private final Array<String> tableEntries = new Array<String>();
+
+	private long previous;
+
+	/**
+	 * State before the last write, to undo it if the buffer is truncated
+	 */
+	private int lastStart = -1;
+
+	private int lastTableSize;
+
+	private long lastPrevious;
+
+	/**
+	 * @param jsonArray
+	 *            if the decoded payloads are JSON arrays (as
+	 *            {@link JsonArraySerializer}) instead of lines (as
+	 *            {@link CsvSerializer})
+	 */
+	public BinarySerializer(boolean jsonArray) {
+		this.jsonArray = jsonArray;
+	}
+
+	@Override
+	public String contentType() {
+		return CONTENT_TYPE;
+	}
+
+	@Override
+	public void begin(TraceBuffer out) {
+		table.clear();
+		tableEntries.clear();
+		previous = 0;
+		lastStart = -1;
+		out.append(MAGIC).append(VERSION)
+				.append(jsonArray ? JSON_ARRAY : LINES);
+	}
+
+	@Override
+	public void write(String trace, TraceBuffer out) {
+		rollback(out);
+		lastStart = out.size();
+		lastTableSize = tableEntries.size;
+		lastPrevious = previous;
+		if (!(trace.startsWith(ACTOR) && writeStatement(trace, out))
+				&& !writeCsv(trace, out)) {
+			out.append(RAW);
+			token(trace, out);
+		}
+		out.traceWritten();
+	}
+
+	@Override
+	public void end(TraceBuffer out) {
+		rollback(out);
+		lastStart = -1;
+		out.append(END);
+	}
+
+	/**
+	 * Forgets the strings and the timestamp of the last trace if the buffer
+	 * was truncated to its start
+	 */
+	private void rollback(TraceBuffer out) {
+		if (lastStart != -1 && out.size() == lastStart) {
+			while (tableEntries.size > lastTableSize) {
+				table.remove(tableEntries.pop(), 0);
+			}
+			previous = lastPrevious;
+		}
+	}
+
+	private boolean writeStatement(String trace, TraceBuffer out) {
+		int verb = trace.indexOf(VERB, ACTOR.length());
+		int object = verb == -1 ? -1 : trace.indexOf(OBJECT, verb);
+		int type = object == -1 ? -1 : trace.indexOf(TYPE, object);
+		int timestamp = type == -1 ? -1 : trace.indexOf(TIMESTAMP, type);
+		int timestampEnd = timestamp == -1 ? -1 : trace.indexOf('"',
+				timestamp + TIMESTAMP.length());
+		if (timestampEnd == -1 || !trace.endsWith("}")) {
+			return false;
+		}
+		int timestampStart = timestamp + TIMESTAMP.length();
+		long time = IsoDate.parse(trace, timestampStart, timestampEnd);
+		if (time == Long.MIN_VALUE) {
+			return false;
+		}
+		int objectStart = object + OBJECT.length();
+		int localId = trace.lastIndexOf('/', type - 1) + 1;
+		if (localId <= objectStart) {
+			localId = objectStart;
+		}
+		out.append(timestampEnd - timestampStart == 24 ? XAPI_MILLIS
+				: XAPI_SECONDS);
+		timestamp(time, out);
+		token(trace.substring(ACTOR.length(), verb), out);
+		token(trace.substring(verb + VERB.length(), object), out);
+		token(trace.substring(objectStart, localId), out);
+		token(trace.substring(localId, type), out);
+		token(trace.substring(type + TYPE.length(), timestamp), out);
+		token(trace.substring(timestampEnd + 1, trace.length() - 1), out);
+		return true;
+	}
+
+	private boolean writeCsv(String trace, TraceBuffer out) {
+		int comma = trace.indexOf(',');
+		if (comma < 1 || comma > 18) {
+			return false;
+		}
+		long time = 0;
+		for (int i = 0; i < comma; i++) {
+			char c = trace.charAt(i);
+			if (c < '0' || c > '9' || (i == 0 && c == '0' && comma > 1)) {
+				return false;
+			}
+			time = time * 10 + c - '0';
+		}
+		int fields = 1;
+		for (int i = comma + 1; i < trace.length(); i++) {
+			if (trace.charAt(i) == ',') {
+				fields++;
+			}
+		}
+		out.append(CSV);
+		timestamp(time, out);
+		varint(fields, out);
+		int start = comma + 1;
+		for (int i = 0; i < fields; i++) {
+			int end = trace.indexOf(',', start);
+			if (end == -1) {
+				end = trace.length();
+			}
+			token(trace.substring(start, end), out);
+			start = end + 1;
+		}
+		return true;
+	}
+
+	private void timestamp(long time, TraceBuffer out) {
+		long delta = time - previous;
+		previous = time;
+		long zigZag = (delta << 1) ^ (delta >> 63);
+		while ((zigZag & ~0x7FL) != 0) {
+			out.append((byte) ((zigZag & 0x7F) | 0x80));
+			zigZag >>>= 7;
+		}
+		out.append((byte) zigZag);
+	}
+
+	private void token(String value, TraceBuffer out) {
+		int index = INDICES.get(value, -1);
+		if (index != -1) {
+			varint(1 + index, out);
+			return;
+		}
+		index = table.get(value, -1);
+		if (index != -1) {
+			varint(1 + DICTIONARY.size + index, out);
+			return;
+		}
+		out.append((byte) 0);
+		varint(utf8Length(value), out);
+		out.append(value);
+		table.put(value, tableEntries.size);
+		tableEntries.add(value);
+	}
+
+	private static void varint(int value, TraceBuffer out) {
+		while ((value & ~0x7F) != 0) {
+			out.append((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.append((byte) value);
+	}
+
+	/**
+	 * @return the length of the string as encoded by
+	 *         {@link TraceBuffer#append(String)}
+	 */
+	private static int utf8Length(String s) {
+		int length = s.length();
+		int bytes = 0;
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				bytes++;
+			} else if (c < 0x800) {
+				bytes += 2;
+			} else if (c >= Character.MIN_SURROGATE
+					&& c <= Character.MAX_SURROGATE) {
+				if (Character.isHighSurrogate(c) && i + 1 < length
+						&& Character.isLowSurrogate(s.charAt(++i))) {
+					bytes += 4;
+				} else {
+					// Replaced by '?'
+					bytes++;
+				}
+			} else {
+				bytes += 3;
+			}
+		}
+		return bytes;
+	}
+}
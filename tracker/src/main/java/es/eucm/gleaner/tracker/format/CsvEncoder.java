@@ -0,0 +1,119 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+import com.badlogic.gdx.utils.StringBuilder;
+
+/**
+ * Builds CSV trace lines into a reusable buffer. A line is started with
+ * {@link #begin(long)}, each value is added with one of the field methods
+ * (that take care of the separators and the escaping) and the result is
+ * read with {@link #toString()}. Nothing is allocated but the final string.
+ * 
+ * Not thread safe.
+ */
+public class CsvEncoder {
+
+	private final StringBuilder line = new StringBuilder(128);
+
+	/**
+	 * Starts a new line with the given timestamp
+	 */
+	public CsvEncoder begin(long timestamp) {
+		line.setLength(0);
+		line.append(timestamp);
+		return this;
+	}
+
+	/**
+	 * Adds a value, escaped if needed (see
+	 * {@link #appendEscaped(StringBuilder, String)})
+	 */
+	public CsvEncoder field(String value) {
+		line.append(',');
+		appendEscaped(line, value);
+		return this;
+	}
+
+	public CsvEncoder field(float value) {
+		line.append(',');
+		FloatFormat.append(line, value);
+		return this;
+	}
+
+	public CsvEncoder field(int value) {
+		line.append(',').append(value);
+		return this;
+	}
+
+	public CsvEncoder field(long value) {
+		line.append(',').append(value);
+		return this;
+	}
+
+	/**
+	 * Adds an already formatted piece of a line, without escaping it
+	 */
+	public CsvEncoder raw(String values) {
+		line.append(',').append(values);
+		return this;
+	}
+
+	/**
+	 * @return the line built so far. Only valid until the next
+	 *         {@link #begin(long)}
+	 */
+	public StringBuilder getLine() {
+		return line;
+	}
+
+	@Override
+	public String toString() {
+		return line.toString();
+	}
+
+	/**
+	 * Escapes a piece of input in case it has commas by adding quotes at
+	 * beginning and end. If there are any quotes in the piece of input
+	 * provided, these are escaped by adding a back slash Examples: input with
+	 * a, comma => "input with a, comma" input "with \"quotes => "input
+	 * \"with \\"quotes" "input with, quotes, and commas" =>
+	 * "\"input with, quotes, and commas\""
+	 */
+	public static void appendEscaped(StringBuilder out, String input) {
+		int length = input.length();
+		boolean escape = false;
+		for (int i = 0; i < length && !escape; i++) {
+			char c = input.charAt(i);
+			escape = c == ',' || c == '"';
+		}
+
+		if (!escape) {
+			out.append(input);
+			return;
+		}
+
+		out.append('"');
+		for (int i = 0; i < length; i++) {
+			char c = input.charAt(i);
+			if (c == '"') {
+				out.append('\\');
+			}
+			out.append(c);
+		}
+		out.append('"');
+	}
+}
@@ -0,0 +1,135 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+import com.badlogic.gdx.utils.StringBuilder;
+
+/**
+ * Writes floats into a {@link StringBuilder} without creating intermediate
+ * strings. The output is the shortest plain decimal number that reads back
+ * as exactly the same float and, like {@link Float#toString(float)}, always
+ * has at least one decimal (100 is written as "100.0").
+ * 
+ * Values outside [1e-3, 1e7), which {@link Float#toString(float)} writes in
+ * scientific notation, and the rare values whose digits cannot be checked
+ * exactly, fall back to {@link Float#toString(float)}.
+ */
+public final class FloatFormat {
+
+	/**
+	 * Enough to tell apart any two floats
+	 */
+	private static final int MAX_DIGITS = 9;
+
+	private static final long[] POWERS_OF_TEN = { 1L, 10L, 100L, 1000L,
+			10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L,
+			10000000000L, 100000000000L, 1000000000000L };
+
+	private FloatFormat() {
+	}
+
+	public static void append(StringBuilder out, float value) {
+		if (value != value) {
+			out.append("NaN");
+			return;
+		}
+
+		if (value < 0 || (value == 0 && 1 / value < 0)) {
+			out.append('-');
+			value = -value;
+		}
+
+		if (value == 0) {
+			out.append("0.0");
+			return;
+		}
+
+		if (value < 1e-3f || value >= 1e7f) {
+			out.append(Float.toString(value));
+			return;
+		}
+
+		double v = value;
+		// Exponent of the first significant digit
+		int exponent = -3;
+		while (exponent < 6 && v >= tenTo(exponent + 1)) {
+			exponent++;
+		}
+
+		// The integer part is written whole anyway
+		for (int digits = Math.max(1, exponent + 1); digits <= MAX_DIGITS;
+				digits++) {
+			int decimals = digits - 1 - exponent;
+			long n = decimals >= 0 ? Math.round(v * POWERS_OF_TEN[decimals])
+					: Math.round(v / POWERS_OF_TEN[-decimals]);
+			if (readsBack(n, decimals, value)) {
+				append(out, n, decimals);
+				return;
+			}
+		}
+		out.append(Float.toString(value));
+	}
+
+	private static double tenTo(int exponent) {
+		return exponent >= 0 ? POWERS_OF_TEN[exponent]
+				: 1.0 / POWERS_OF_TEN[-exponent];
+	}
+
+	/**
+	 * @return if n / 10^decimals is read as the given (positive) float. The
+	 *         quotient is rounded to a double and then to a float; both
+	 *         roundings give the float nearest to the exact quotient unless
+	 *         the double falls right between two floats, so that case is
+	 *         rejected
+	 */
+	private static boolean readsBack(long n, int decimals, float value) {
+		double d = decimals >= 0 ? n / (double) POWERS_OF_TEN[decimals] : n
+				* (double) POWERS_OF_TEN[-decimals];
+		float f = (float) d;
+		if (f != value) {
+			return false;
+		}
+		int bits = Float.floatToIntBits(f);
+		return d != (f + (double) Float.intBitsToFloat(bits + 1)) / 2
+				&& d != (f + (double) Float.intBitsToFloat(bits - 1)) / 2;
+	}
+
+	private static void append(StringBuilder out, long n, int decimals) {
+		if (decimals <= 0) {
+			out.append(n * POWERS_OF_TEN[-decimals]);
+			out.append(".0");
+			return;
+		}
+		long scale = POWERS_OF_TEN[decimals];
+		long fraction = n % scale;
+		out.append(n / scale);
+		out.append('.');
+		if (fraction == 0) {
+			out.append('0');
+			return;
+		}
+
+		while (fraction % 10 == 0) {
+			fraction /= 10;
+			decimals--;
+		}
+		// Leading zeros of the fraction
+		for (int i = StringBuilder.numChars(fraction, 10); i < decimals; i++) {
+			out.append('0');
+		}
+		out.append(fraction);
+	}
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+/**
+ * Parses UTC ISO-8601 timestamps (yyyy-MM-ddTHH:mm:ss[.SSS]Z) into epoch
+ * milliseconds, with plain civil calendar arithmetic instead of
+ * {@link java.util.Calendar}. {@link IsoDateFormatter} writes them
+ */
+public class IsoDate {
+
+	private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+	/**
+	 * @return the milliseconds of the timestamp between start (inclusive) and
+	 *         end (exclusive), or {@link Long#MIN_VALUE} if it is not a valid
+	 *         timestamp. Only 4 digit years are accepted
+	 */
+	public static long parse(String s, int start, int end) {
+		int length = end - start;
+		if ((length != 20 && length != 24) || s.charAt(start + 4) != '-'
+				|| s.charAt(start + 7) != '-' || s.charAt(start + 10) != 'T'
+				|| s.charAt(start + 13) != ':' || s.charAt(start + 16) != ':'
+				|| s.charAt(end - 1) != 'Z') {
+			return Long.MIN_VALUE;
+		}
+		int year = digits(s, start, 4);
+		int month = digits(s, start + 5, 2);
+		int day = digits(s, start + 8, 2);
+		int hours = digits(s, start + 11, 2);
+		int minutes = digits(s, start + 14, 2);
+		int seconds = digits(s, start + 17, 2);
+		int millis = 0;
+		if (length == 24) {
+			if (s.charAt(start + 19) != '.') {
+				return Long.MIN_VALUE;
+			}
+			millis = digits(s, start + 20, 3);
+		}
+		if (year < 0 || month < 1 || month > 12 || day < 1
+				|| day > daysInMonth(year, month) || hours < 0 || hours > 23
+				|| minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59
+				|| millis < 0) {
+			return Long.MIN_VALUE;
+		}
+		return daysFromCivil(year, month, day) * MILLIS_PER_DAY
+				+ ((hours * 60 + minutes) * 60 + seconds) * 1000L + millis;
+	}
+
+	/**
+	 * @return days since 1970-01-01 of the given date
+	 */
+	public static long daysFromCivil(int year, int month, int day) {
+		year -= month <= 2 ? 1 : 0;
+		long era = (year >= 0 ? year : year - 399) / 400;
+		long yearOfEra = year - era * 400;
+		long dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day
+				- 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100
+				+ dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	/**
+	 * @return the date of the given days since 1970-01-01, packed as year <<
+	 *         16 | month << 8 | day
+	 */
+	public static long civilFromDays(long days) {
+		days += 719468;
+		long era = (days >= 0 ? days : days - 146096) / 146097;
+		long dayOfEra = days - era * 146097;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra
+				- (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long mp = (5 * dayOfYear + 2) / 153;
+		long day = dayOfYear - (153 * mp + 2) / 5 + 1;
+		long month = mp < 10 ? mp + 3 : mp - 9;
+		long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+		return year << 16 | month << 8 | day;
+	}
+
+	private static int daysInMonth(int year, int month) {
+		switch (month) {
+		case 2:
+			return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0 ? 29
+					: 28;
+		case 4:
+		case 6:
+		case 9:
+		case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+
+	static long floorDiv(long x, long y) {
+		long q = x / y;
+		return (x % y != 0 && (x < 0) != (y < 0)) ? q - 1 : q;
+	}
+
+	/**
+	 * @return the value of the given decimal digits, or -1 if there is
+	 *         something else
+	 */
+	private static int digits(String s, int start, int count) {
+		int value = 0;
+		for (int i = start; i < start + count; i++) {
+			char c = s.charAt(i);
+			if (c < '0' || c > '9') {
+				return -1;
+			}
+			value = value * 10 + c - '0';
+		}
+		return value;
+	}
+}
@@ -0,0 +1,110 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+import com.badlogic.gdx.utils.StringBuilder;
+
+/**
+ * Appends UTC ISO-8601 timestamps (yyyy-MM-ddTHH:mm:ss[.SSS]Z). The
+ * formatted timestamp is cached: within the same second only the
+ * milliseconds are written, and within the same day only the time. Nothing
+ * is allocated.
+ * 
+ * Not thread safe.
+ */
+public class IsoDateFormatter {
+
+	private static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+	private final char[] chars = "0000-00-00T00:00:00.000Z".toCharArray();
+
+	private boolean withMillis;
+
+	private long second = Long.MIN_VALUE;
+
+	private long day = Long.MIN_VALUE;
+
+	/**
+	 * @param withMillis
+	 *            if the milliseconds are written
+	 */
+	public IsoDateFormatter(boolean withMillis) {
+		setWithMillis(withMillis);
+	}
+
+	public void setWithMillis(boolean withMillis) {
+		this.withMillis = withMillis;
+		chars[19] = withMillis ? '.' : 'Z';
+	}
+
+	/**
+	 * Appends the timestamp of the given epoch milliseconds
+	 */
+	public void append(StringBuilder out, long time) {
+		out.append(chars, 0, format(time));
+	}
+
+	/**
+	 * Appends the timestamp of the given epoch milliseconds
+	 */
+	public void append(TraceBuffer out, long time) {
+		out.append(chars, 0, format(time));
+	}
+
+	/**
+	 * Writes the timestamp in {@link #chars}
+	 * 
+	 * @return its length
+	 */
+	private int format(long time) {
+		long second = IsoDate.floorDiv(time, 1000);
+		if (second != this.second) {
+			setSecond(second);
+		}
+		if (withMillis) {
+			int millis = (int) (time - second * 1000);
+			chars[20] = (char) ('0' + millis / 100);
+			chars[21] = (char) ('0' + millis / 10 % 10);
+			chars[22] = (char) ('0' + millis % 10);
+			return 24;
+		}
+		return 20;
+	}
+
+	private void setSecond(long second) {
+		this.second = second;
+		long time = second * 1000;
+		long day = IsoDate.floorDiv(time, MILLIS_PER_DAY);
+		if (day != this.day) {
+			this.day = day;
+			long civil = IsoDate.civilFromDays(day);
+			write((int) (civil >> 16), 0, 4);
+			write((int) (civil >> 8) & 0xFF, 5, 2);
+			write((int) civil & 0xFF, 8, 2);
+		}
+		int secondOfDay = (int) ((time - day * MILLIS_PER_DAY) / 1000);
+		write(secondOfDay / 3600, 11, 2);
+		write(secondOfDay / 60 % 60, 14, 2);
+		write(secondOfDay % 60, 17, 2);
+	}
+
+	private void write(int value, int offset, int digits) {
+		for (int i = offset + digits - 1; i >= offset; i--) {
+			chars[i] = (char) ('0' + value % 10);
+			value /= 10;
+		}
+	}
+}
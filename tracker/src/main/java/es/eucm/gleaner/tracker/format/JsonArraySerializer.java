@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+/**
+ * A JSON array with every trace (each one a JSON object) as an element
+ */
+public class JsonArraySerializer implements TraceSerializer {
+
+	@Override
+	public String contentType() {
+		return "application/json; charset=utf-8";
+	}
+
+	@Override
+	public void begin(TraceBuffer out) {
+		out.append('[');
+	}
+
+	@Override
+	public void write(String trace, TraceBuffer out) {
+		if (out.traceCount() > 0) {
+			out.append(',');
+		}
+		out.append(trace);
+		out.traceWritten();
+	}
+
+	@Override
+	public void end(TraceBuffer out) {
+		out.append(']');
+	}
+}
@@ -0,0 +1,250 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+import com.badlogic.gdx.utils.Pool.Poolable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * Growable buffer holding a serialized batch of traces, encoded in UTF-8.
+ * Characters are encoded as they are appended, so a batch never exists as a
+ * single {@link String}. Buffers are meant to be pooled: {@link #reset()}
+ * empties the buffer and gives back the memory of unusually large batches.
+ */
+public class TraceBuffer implements Poolable {
+
+	private static final int INITIAL_CAPACITY = 4096;
+
+	/**
+	 * Buffers bigger than this are shrunk when reset, so a long backlog does
+	 * not stay in the pool forever
+	 */
+	private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+
+	private byte[] bytes;
+
+	private int size;
+
+	private int traces;
+
+	private long sequence = -1;
+
+	public TraceBuffer() {
+		this(INITIAL_CAPACITY);
+	}
+
+	public TraceBuffer(int capacity) {
+		bytes = new byte[capacity];
+	}
+
+	/**
+	 * @return the internal array. Only the first {@link #size()} bytes are
+	 *         valid
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return number of bytes written
+	 */
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return number of traces written, as counted by
+	 *         {@link #traceWritten()}
+	 */
+	public int traceCount() {
+		return traces;
+	}
+
+	/**
+	 * @return sequence number of the batch in this buffer, or -1 if it has
+	 *         none
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public void setSequence(long sequence) {
+		this.sequence = sequence;
+	}
+
+	/**
+	 * Serializers must call this method after writing each trace
+	 */
+	public void traceWritten() {
+		traces++;
+	}
+
+	public TraceBuffer append(byte b) {
+		ensureCapacity(size + 1);
+		bytes[size++] = b;
+		return this;
+	}
+
+	public TraceBuffer append(byte[] b, int offset, int length) {
+		ensureCapacity(size + length);
+		System.arraycopy(b, offset, bytes, size, length);
+		size += length;
+		return this;
+	}
+
+	/**
+	 * Appends an ASCII character
+	 */
+	public TraceBuffer append(char c) {
+		if (c < 0x80) {
+			return append((byte) c);
+		}
+		return append(c, (char) 0);
+	}
+
+	public TraceBuffer append(String s) {
+		int length = s.length();
+		ensureCapacity(size + length);
+		for (int i = 0; i < length; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				if (size == bytes.length) {
+					ensureCapacity(size + length - i);
+				}
+				bytes[size++] = (byte) c;
+			} else {
+				if (Character.isHighSurrogate(c) && i + 1 < length) {
+					append(c, s.charAt(++i));
+				} else {
+					append(c, (char) 0);
+				}
+			}
+		}
+		return this;
+	}
+
+	public TraceBuffer append(char[] chars, int offset, int length) {
+		ensureCapacity(size + length);
+		int end = offset + length;
+		for (int i = offset; i < end; i++) {
+			char c = chars[i];
+			if (c < 0x80) {
+				if (size == bytes.length) {
+					ensureCapacity(size + end - i);
+				}
+				bytes[size++] = (byte) c;
+			} else {
+				if (Character.isHighSurrogate(c) && i + 1 < end) {
+					append(c, chars[++i]);
+				} else {
+					append(c, (char) 0);
+				}
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Encodes a non ASCII character. next is only used when c is a high
+	 * surrogate
+	 */
+	private TraceBuffer append(char c, char next) {
+		ensureCapacity(size + 4);
+		if (c < 0x800) {
+			bytes[size++] = (byte) (0xC0 | (c >> 6));
+			bytes[size++] = (byte) (0x80 | (c & 0x3F));
+		} else if (c >= Character.MIN_SURROGATE
+				&& c <= Character.MAX_SURROGATE) {
+			if (Character.isHighSurrogate(c)
+					&& Character.isLowSurrogate(next)) {
+				int codePoint = Character.toCodePoint(c, next);
+				bytes[size++] = (byte) (0xF0 | (codePoint >> 18));
+				bytes[size++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+				bytes[size++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+				bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+			} else {
+				// Malformed input
+				bytes[size++] = '?';
+			}
+		} else {
+			bytes[size++] = (byte) (0xE0 | (c >> 12));
+			bytes[size++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+			bytes[size++] = (byte) (0x80 | (c & 0x3F));
+		}
+		return this;
+	}
+
+	/**
+	 * Discards what was appended after the buffer had the given size and
+	 * number of traces
+	 */
+	public void truncate(int size, int traceCount) {
+		this.size = size;
+		this.traces = traceCount;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > bytes.length) {
+			byte[] newBytes = new byte[Math.max(capacity,
+					bytes.length + (bytes.length >> 1))];
+			System.arraycopy(bytes, 0, newBytes, 0, size);
+			bytes = newBytes;
+		}
+	}
+
+	/**
+	 * Writes the contents of the buffer to the given stream
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(bytes, 0, size);
+	}
+
+	/**
+	 * @return a stream reading the contents of this buffer. The buffer must
+	 *         not be modified while the stream is in use
+	 */
+	public InputStream asInputStream() {
+		return new ByteArrayInputStream(bytes, 0, size);
+	}
+
+	@Override
+	public void reset() {
+		size = 0;
+		traces = 0;
+		sequence = -1;
+		if (bytes.length > MAX_RETAINED_CAPACITY) {
+			bytes = new byte[INITIAL_CAPACITY];
+		}
+	}
+
+	@Override
+	public String toString() {
+		try {
+			return new String(bytes, 0, size, "UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
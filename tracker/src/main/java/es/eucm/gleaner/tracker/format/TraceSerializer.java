@@ -0,0 +1,52 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+/**
+ * Turns a batch of traces into the payload sent to the storage. Traces are
+ * streamed one by one into a {@link TraceBuffer}:
+ * 
+ * <pre>
+ * serializer.begin(buffer);
+ * for (String trace : traces) {
+ * 	serializer.write(trace, buffer);
+ * }
+ * serializer.end(buffer);
+ * </pre>
+ */
+public interface TraceSerializer {
+
+	/**
+	 * @return the content type of the payloads
+	 */
+	String contentType();
+
+	/**
+	 * Writes whatever goes before the first trace
+	 */
+	void begin(TraceBuffer out);
+
+	/**
+	 * Writes one trace. Implementations must call
+	 * {@link TraceBuffer#traceWritten()}
+	 */
+	void write(String trace, TraceBuffer out);
+
+	/**
+	 * Writes whatever goes after the last trace
+	 */
+	void end(TraceBuffer out);
+}
@@ -0,0 +1,272 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.journal;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * {@link TraceJournal} in memory-mapped segment files. Each record is its
+ * length (written last, so a torn record is never read), its priority and
+ * its UTF-8 bytes. Segments are named after the position of their first
+ * trace, and deleted once the checkpoint passes them.
+ * 
+ * Mapped pages survive a crash of the game, but not of the OS, unless
+ * {@link #sync()} is called. Recovered traces are journaled again when
+ * re-added to the tracker; a crash before they are acknowledged can
+ * recover them twice
+ */
+public class MappedJournal implements TraceJournal {
+
+	public static final int DEFAULT_SEGMENT_SIZE = 1024 * 1024;
+
+	private static final String PREFIX = "journal-";
+
+	private static final String SUFFIX = ".log";
+
+	private static final String CHECKPOINT = "checkpoint";
+
+	/**
+	 * Length and priority
+	 */
+	private static final int HEADER = 5;
+
+	private final FileHandle directory;
+
+	private final int segmentSize;
+
+	private final Array<Segment> segments = new Array<Segment>();
+
+	private final TraceBuffer scratch = new TraceBuffer();
+
+	private MappedByteBuffer current;
+
+	private MappedByteBuffer checkpointBuffer;
+
+	private long checkpoint;
+
+	private long position;
+
+	private Array<String> recovered = new Array<String>();
+
+	private IntArray recoveredPriorities = new IntArray();
+
+	/**
+	 * Set if the journal could not be written. Traces are still tracked, but
+	 * not journaled
+	 */
+	private boolean broken;
+
+	public MappedJournal(FileHandle directory) {
+		this(directory, DEFAULT_SEGMENT_SIZE);
+	}
+
+	/**
+	 * @param directory
+	 *            folder for the journal files. Only one tracker can use it
+	 * @param segmentSize
+	 *            size of each segment file, in bytes
+	 */
+	public MappedJournal(FileHandle directory, int segmentSize) {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		try {
+			directory.mkdirs();
+			checkpointBuffer = map(directory.child(CHECKPOINT), 8);
+			checkpoint = checkpointBuffer.getLong(0);
+			position = checkpoint;
+			read();
+		} catch (IOException e) {
+			e.printStackTrace();
+			broken = true;
+		}
+	}
+
+	/**
+	 * Reads the existing segments, keeping the traces after the checkpoint
+	 */
+	private void read() throws UnsupportedEncodingException {
+		FileHandle[] files = directory.list(SUFFIX);
+		Array<Segment> found = new Array<Segment>();
+		for (FileHandle file : files) {
+			if (file.name().startsWith(PREFIX)) {
+				found.add(new Segment(file, Long.parseLong(file
+						.nameWithoutExtension().substring(PREFIX.length()))));
+			}
+		}
+		found.sort();
+
+		for (Segment segment : found) {
+			byte[] bytes = segment.file.readBytes();
+			ByteBuffer buffer = ByteBuffer.wrap(bytes);
+			long next = segment.first;
+			int offset = 0;
+			while (offset + HEADER <= bytes.length) {
+				int length = buffer.getInt(offset);
+				if (length <= 0 || offset + HEADER + length > bytes.length) {
+					break;
+				}
+				if (next >= checkpoint) {
+					recoveredPriorities.add(bytes[offset + 4]);
+					recovered.add(new String(bytes, offset + HEADER, length,
+							"UTF-8"));
+				}
+				offset += HEADER + length;
+				next++;
+			}
+			if (next == segment.first) {
+				// Empty. A new segment may take its name
+				segment.file.delete();
+				continue;
+			}
+			segment.end = next;
+			position = Math.max(position, next);
+			segments.add(segment);
+		}
+	}
+
+	@Override
+	public void recover(Array<String> traces, IntArray priorities) {
+		if (recovered != null) {
+			traces.addAll(recovered);
+			priorities.addAll(recoveredPriorities);
+			recovered = null;
+			recoveredPriorities = null;
+		}
+	}
+
+	@Override
+	public void append(String trace, int priority) {
+		if (broken) {
+			position++;
+			return;
+		}
+		scratch.reset();
+		scratch.append(trace);
+		int length = scratch.size();
+		// Leaves room for the 0 length that marks the end
+		if (current == null || current.remaining() < HEADER + length + 4) {
+			try {
+				roll(HEADER + length + 4);
+			} catch (IOException e) {
+				e.printStackTrace();
+				broken = true;
+				position++;
+				return;
+			}
+		}
+		int start = current.position();
+		current.position(start + 4);
+		current.put((byte) priority);
+		current.put(scratch.getBytes(), 0, length);
+		current.putInt(start, length);
+		segments.peek().end = ++position;
+	}
+
+	private void roll(int minSize) throws IOException {
+		Segment segment = new Segment(directory.child(PREFIX
+				+ String.format("%019d", position) + SUFFIX), position);
+		current = map(segment.file, Math.max(segmentSize, minSize));
+		segment.end = position;
+		segments.add(segment);
+	}
+
+	private MappedByteBuffer map(FileHandle file, int size) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file.file(), "rw");
+		try {
+			if (raf.length() < size) {
+				raf.setLength(size);
+			}
+			// The mapping stays valid after closing the file
+			return raf.getChannel().map(MapMode.READ_WRITE, 0, size);
+		} finally {
+			raf.close();
+		}
+	}
+
+	@Override
+	public long position() {
+		return position;
+	}
+
+	@Override
+	public void checkpoint(long position) {
+		if (broken || position <= checkpoint) {
+			return;
+		}
+		checkpoint = position;
+		checkpointBuffer.putLong(0, position);
+		// The last segment is still being written
+		while (segments.size > 1 && segments.first().end <= position) {
+			if (!segments.first().file.delete()) {
+				// Still mapped in some platforms. Next checkpoint will retry
+				break;
+			}
+			segments.removeIndex(0);
+		}
+	}
+
+	/**
+	 * Forces the journal to the storage device
+	 */
+	public void sync() {
+		if (current != null) {
+			current.force();
+		}
+		if (checkpointBuffer != null) {
+			checkpointBuffer.force();
+		}
+	}
+
+	@Override
+	public void close() {
+		sync();
+		current = null;
+		checkpointBuffer = null;
+		broken = true;
+	}
+
+	private static class Segment implements Comparable<Segment> {
+
+		private final FileHandle file;
+
+		private final long first;
+
+		/**
+		 * Position after its last trace
+		 */
+		private long end;
+
+		public Segment(FileHandle file, long first) {
+			this.file = file;
+			this.first = first;
+		}
+
+		@Override
+		public int compareTo(Segment o) {
+			return first < o.first ? -1 : first == o.first ? 0 : 1;
+		}
+	}
+}
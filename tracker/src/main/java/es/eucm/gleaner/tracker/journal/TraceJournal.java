@@ -0,0 +1,51 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.journal;
+
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+
+/**
+ * Write-ahead journal of the traces held by the tracker, so they survive a
+ * crash. Traces are numbered by their position in the journal. The tracker
+ * calls it with its lock held, so implementations need not be thread-safe
+ */
+public interface TraceJournal {
+
+	/**
+	 * Adds the traces not acknowledged in previous sessions, in order. Only
+	 * the first call returns them
+	 */
+	void recover(Array<String> traces, IntArray priorities);
+
+	/**
+	 * Appends a trace
+	 */
+	void append(String trace, int priority);
+
+	/**
+	 * @return position of the next trace to be appended
+	 */
+	long position();
+
+	/**
+	 * All traces before the given position have been acknowledged (or
+	 * dropped) and do not need to be recovered
+	 */
+	void checkpoint(long position);
+
+	void close();
+}
@@ -0,0 +1,80 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.queue;
+
+import es.eucm.gleaner.tracker.TraceEvent;
+import es.eucm.gleaner.tracker.atomic.AtomicLong;
+
+/**
+ * Counts the traces discarded because the tracker ran out of budget, so the
+ * loss can be accounted for when analyzing the data. Thread safe.
+ */
+public class DroppedTraces {
+
+	private final AtomicLong count = new AtomicLong();
+
+	private final AtomicLong length = new AtomicLong();
+
+	private final AtomicLong timeouts = new AtomicLong();
+
+	private final AtomicLong[] byPriority = new AtomicLong[SegmentList.PRIORITY_LEVELS];
+
+	public DroppedTraces() {
+		for (int i = 0; i < byPriority.length; i++) {
+			byPriority[i] = new AtomicLong();
+		}
+	}
+
+	public void dropped(Object trace, int priority) {
+		count.incrementAndGet();
+		length.addAndGet(TraceEvent.length(trace));
+		byPriority[priority].incrementAndGet();
+	}
+
+	public void timedOut() {
+		timeouts.incrementAndGet();
+	}
+
+	/**
+	 * @return number of traces dropped
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return number of traces dropped with the given priority
+	 */
+	public long getCount(int priority) {
+		return byPriority[priority].get();
+	}
+
+	/**
+	 * @return sum of the lengths of the traces dropped
+	 */
+	public long getLength() {
+		return length.get();
+	}
+
+	/**
+	 * @return number of times a caller waited the whole timeout of
+	 *         {@link OverflowPolicy#BLOCK}. The trace is dropped and counted
+	 *         too
+	 */
+	public long getTimeouts() {
+		return timeouts.get();
+	}
+}
@@ -0,0 +1,49 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.queue;
+
+/**
+ * What to do with a new trace when the tracker already holds as many traces
+ * (or characters) as its budget allows
+ */
+public enum OverflowPolicy {
+
+	/**
+	 * Discard the oldest traces not yet sent
+	 */
+	DROP_OLDEST,
+
+	/**
+	 * Discard the new trace
+	 */
+	DROP_NEWEST,
+
+	/**
+	 * Discard the oldest trace among the ones with the lowest priority, as
+	 * long as it is not higher than the priority of the new trace. Otherwise,
+	 * discard the new trace
+	 */
+	DROP_LOW_PRIORITY,
+
+	/**
+	 * Make the caller wait until some traces are acknowledged by the storage,
+	 * up to a timeout. The new trace is discarded on timeout. Meant for
+	 * traces added by other threads than the one updating the tracker (or
+	 * with a {@link es.eucm.gleaner.tracker.FlushScheduler}): that thread
+	 * does not wait unless batches are in flight. In GWT, it never waits
+	 */
+	BLOCK
+}
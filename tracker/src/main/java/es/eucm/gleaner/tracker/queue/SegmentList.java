@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.queue;
+
+import com.badlogic.gdx.utils.Pool;
+import es.eucm.gleaner.tracker.TraceEvent;
+
+/**
+ * List of traces stored as a chain of {@link TraceSegment}s taken from a
+ * pool. Whole lists are moved around by relinking their segments, in
+ * constant time, and segments go back to the pool when the list is cleared.
+ * 
+ * Besides the traces, the list keeps their total length and how many there
+ * are of each priority.
+ * 
+ * Not thread safe. Neither is the pool.
+ */
+public class SegmentList {
+
+	/**
+	 * Number of priority levels. Priorities go from 0 (lowest) to LEVELS - 1
+	 */
+	public static final int PRIORITY_LEVELS = 3;
+
+	private final Pool<TraceSegment> pool;
+
+	private final int[] tag = new int[1];
+
+	private TraceSegment head;
+
+	private TraceSegment tail;
+
+	private int size;
+
+	private long length;
+
+	private int[] priorities = new int[PRIORITY_LEVELS];
+
+	public SegmentList(Pool<TraceSegment> pool) {
+		this.pool = pool;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return sum of the lengths of all the traces (see
+	 *         {@link TraceEvent#length(Object)})
+	 */
+	public long length() {
+		return length;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * @return the first segment of the list, or null if the list is empty.
+	 *         Use {@link TraceSegment#next()} to iterate
+	 */
+	public TraceSegment first() {
+		return head;
+	}
+
+	/**
+	 * @return the lowest priority of the traces in the list, or -1 if the list
+	 *         is empty
+	 */
+	public int lowestPriority() {
+		for (int i = 0; i < PRIORITY_LEVELS; i++) {
+			if (priorities[i] > 0) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	public void add(Object trace, int priority) {
+		if (tail == null || tail.isFull()) {
+			TraceSegment segment = pool.obtain();
+			if (tail == null) {
+				head = segment;
+			} else {
+				tail.next = segment;
+			}
+			tail = segment;
+		}
+		tail.add(trace, priority);
+		size++;
+		length += TraceEvent.length(trace);
+		priorities[priority]++;
+	}
+
+	/**
+	 * Moves all the traces in the given queue to the end of this list. Queue
+	 * tags are taken as priorities
+	 * 
+	 * @return number of traces moved
+	 */
+	public int addAll(TraceQueue<Object> queue) {
+		int count = 0;
+		Object trace;
+		while ((trace = queue.poll(tag)) != null) {
+			add(trace, tag[0]);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Removes the oldest trace
+	 * 
+	 * @return the removed trace, or null if the list is empty
+	 */
+	public Object removeFirst() {
+		if (head == null) {
+			return null;
+		}
+		return remove(null, head, 0);
+	}
+
+	/**
+	 * Removes the oldest trace with the given priority
+	 * 
+	 * @return the removed trace, or null if there is none with that priority
+	 */
+	public Object removeFirst(int priority) {
+		if (priorities[priority] == 0) {
+			return null;
+		}
+		TraceSegment previous = null;
+		for (TraceSegment segment = head; segment != null;
+				segment = segment.next) {
+			for (int i = 0; i < segment.size(); i++) {
+				if (segment.getPriority(i) == priority) {
+					return remove(previous, segment, i);
+				}
+			}
+			previous = segment;
+		}
+		return null;
+	}
+
+	private Object remove(TraceSegment previous, TraceSegment segment,
+			int index) {
+		priorities[segment.getPriority(index)]--;
+		Object trace = segment.remove(index);
+		size--;
+		length -= TraceEvent.length(trace);
+		if (segment.size() == 0 && segment != tail) {
+			if (previous == null) {
+				head = segment.next;
+			} else {
+				previous.next = segment.next;
+			}
+			pool.free(segment);
+		} else if (size == 0) {
+			head = tail = null;
+			pool.free(segment);
+		}
+		return trace;
+	}
+
+	/**
+	 * Moves all the traces of this list to the beginning of the given list.
+	 * This list is left empty
+	 */
+	public void prependTo(SegmentList list) {
+		if (head == null) {
+			return;
+		}
+		if (list.head == null) {
+			list.tail = tail;
+		} else {
+			tail.next = list.head;
+		}
+		list.head = head;
+		list.size += size;
+		list.length += length;
+		for (int i = 0; i < PRIORITY_LEVELS; i++) {
+			list.priorities[i] += priorities[i];
+			priorities[i] = 0;
+		}
+		head = tail = null;
+		size = 0;
+		length = 0;
+	}
+
+	/**
+	 * Swaps the contents of this list and the given one
+	 */
+	public void swap(SegmentList list) {
+		TraceSegment head = this.head;
+		TraceSegment tail = this.tail;
+		int size = this.size;
+		long length = this.length;
+		int[] priorities = this.priorities;
+		this.head = list.head;
+		this.tail = list.tail;
+		this.size = list.size;
+		this.length = list.length;
+		this.priorities = list.priorities;
+		list.head = head;
+		list.tail = tail;
+		list.size = size;
+		list.length = length;
+		list.priorities = priorities;
+	}
+
+	/**
+	 * Removes all the traces, returning the segments to the pool
+	 */
+	public void clear() {
+		TraceSegment segment = head;
+		while (segment != null) {
+			TraceSegment next = segment.next;
+			pool.free(segment);
+			segment = next;
+		}
+		head = tail = null;
+		size = 0;
+		length = 0;
+		for (int i = 0; i < PRIORITY_LEVELS; i++) {
+			priorities[i] = 0;
+		}
+	}
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.queue;
+
+import es.eucm.gleaner.tracker.atomic.AtomicLong;
+
+import java.util.List;
+
+/**
+ * Bounded lock-free queue backed by a ring buffer. Any number of threads can
+ * {@link #offer(Object)} and {@link #poll()} concurrently without locking.
+ * 
+ * Each slot carries a sequence number telling whether it is ready to be
+ * written (sequence equals the producer position) or read (sequence equals
+ * the consumer position plus one), so producers and consumers only race for
+ * their own position counter (D. Vyukov's bounded MPMC queue).
+ * 
+ * Each element can carry an int tag, e.g., its priority.
+ */
+public class TraceQueue<T> {
+
+	private final int mask;
+
+	private final Object[] items;
+
+	private final int[] tags;
+
+	/**
+	 * An AtomicLong per slot (GWT has no AtomicLongArray)
+	 */
+	private final AtomicLong[] sequences;
+
+	private final AtomicLong tail = new AtomicLong();
+
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            maximum number of elements, rounded up to a power of two
+	 */
+	public TraceQueue(int capacity) {
+		int size = 1;
+		while (size < capacity) {
+			size <<= 1;
+		}
+		mask = size - 1;
+		items = new Object[size];
+		tags = new int[size];
+		sequences = new AtomicLong[size];
+		for (int i = 0; i < size; i++) {
+			sequences[i] = new AtomicLong(i);
+		}
+	}
+
+	/**
+	 * Adds an element at the end of the queue
+	 * 
+	 * @return false if the queue is full
+	 */
+	public boolean offer(T item) {
+		return offer(item, 0);
+	}
+
+	/**
+	 * Adds an element, with a tag, at the end of the queue
+	 * 
+	 * @return false if the queue is full
+	 */
+	public boolean offer(T item, int tag) {
+		long position = tail.get();
+		while (true) {
+			int index = (int) position & mask;
+			long difference = sequences[index].get() - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					items[index] = item;
+					tags[index] = tag;
+					sequences[index].lazySet(position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (difference < 0) {
+				return false;
+			} else {
+				position = tail.get();
+			}
+		}
+	}
+
+	/**
+	 * Removes the first element of the queue
+	 * 
+	 * @return the element, or null if the queue is empty
+	 */
+	public T poll() {
+		return poll(null);
+	}
+
+	/**
+	 * Removes the first element of the queue
+	 * 
+	 * @param tag
+	 *            if not null, receives the tag of the element in its first
+	 *            position
+	 * @return the element, or null if the queue is empty
+	 */
+	@SuppressWarnings("unchecked")
+	public T poll(int[] tag) {
+		long position = head.get();
+		while (true) {
+			int index = (int) position & mask;
+			long difference = sequences[index].get() - (position + 1);
+			if (difference == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					T item = (T) items[index];
+					if (tag != null) {
+						tag[0] = tags[index];
+					}
+					items[index] = null;
+					sequences[index].lazySet(position + mask + 1);
+					return item;
+				}
+				position = head.get();
+			} else if (difference < 0) {
+				return null;
+			} else {
+				position = head.get();
+			}
+		}
+	}
+
+	/**
+	 * Moves all the elements currently in the queue to the given list
+	 * 
+	 * @return number of elements moved
+	 */
+	public int drainTo(List<? super T> list) {
+		int count = 0;
+		T item;
+		while ((item = poll()) != null) {
+			list.add(item);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @return number of elements in the queue. Only an estimate while other
+	 *         threads are using the queue
+	 */
+	public int size() {
+		long size = tail.get() - head.get();
+		return (int) Math.max(0, Math.min(size, items.length));
+	}
+
+	public boolean isEmpty() {
+		return size() == 0;
+	}
+
+	public int capacity() {
+		return items.length;
+	}
+}
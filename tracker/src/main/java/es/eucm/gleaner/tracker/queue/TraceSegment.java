@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.queue;
+
+import com.badlogic.gdx.utils.Pool.Poolable;
+
+/**
+ * Fixed size block of traces, with their priorities, linked to the next one
+ * in a {@link SegmentList}
+ */
+public class TraceSegment implements Poolable {
+
+	public static final int CAPACITY = 256;
+
+	private final Object[] traces = new Object[CAPACITY];
+
+	private final byte[] priorities = new byte[CAPACITY];
+
+	/**
+	 * Index of the first trace. Traces before it were removed
+	 */
+	private int start;
+
+	private int end;
+
+	TraceSegment next;
+
+	public int size() {
+		return end - start;
+	}
+
+	public boolean isFull() {
+		return end == CAPACITY;
+	}
+
+	public Object get(int index) {
+		return traces[start + index];
+	}
+
+	public int getPriority(int index) {
+		return priorities[start + index];
+	}
+
+	void add(Object trace, int priority) {
+		priorities[end] = (byte) priority;
+		traces[end++] = trace;
+	}
+
+	/**
+	 * Removes the trace in the given index, shifting the ones after it
+	 * 
+	 * @return the removed trace
+	 */
+	Object remove(int index) {
+		index += start;
+		Object trace = traces[index];
+		if (index == start) {
+			traces[start++] = null;
+		} else {
+			System.arraycopy(traces, index + 1, traces, index, end - index
+					- 1);
+			System.arraycopy(priorities, index + 1, priorities, index, end
+					- index - 1);
+			traces[--end] = null;
+		}
+		return trace;
+	}
+
+	/**
+	 * @return the next segment in the list, or null if this is the last one
+	 */
+	public TraceSegment next() {
+		return next;
+	}
+
+	@Override
+	public void reset() {
+		for (int i = start; i < end; i++) {
+			traces[i] = null;
+		}
+		start = end = 0;
+		next = null;
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.retry;
+
+import java.util.Random;
+
+/**
+ * Exponential backoff with full jitter: after n consecutive failures, the
+ * delay is random between 0 and min(maxDelay, baseDelay * 2^(n-1)), so
+ * clients failing at once do not retry at once
+ */
+public class Backoff {
+
+	private final float baseDelay;
+
+	private final float maxDelay;
+
+	private final Random random;
+
+	private int failures;
+
+	/**
+	 * @param baseDelay
+	 *            maximum delay after the first failure, in seconds
+	 * @param maxDelay
+	 *            maximum delay, in seconds
+	 */
+	public Backoff(float baseDelay, float maxDelay) {
+		this(baseDelay, maxDelay, new Random());
+	}
+
+	public Backoff(float baseDelay, float maxDelay, Random random) {
+		this.baseDelay = baseDelay;
+		this.maxDelay = maxDelay;
+		this.random = random;
+	}
+
+	/**
+	 * Counts a failure
+	 * 
+	 * @return seconds to wait before retrying
+	 */
+	public float failed() {
+		failures++;
+		return random.nextFloat() * getMaxDelay();
+	}
+
+	/**
+	 * @return the maximum delay for the current number of failures
+	 */
+	public float getMaxDelay() {
+		if (failures == 0) {
+			return 0;
+		}
+		// Avoids overflowing the shift
+		int exponent = Math.min(failures - 1, 30);
+		return Math.min(maxDelay, baseDelay * (1 << exponent));
+	}
+
+	/**
+	 * @return number of consecutive failures
+	 */
+	public int getFailures() {
+		return failures;
+	}
+
+	/**
+	 * Resets the failures after a success
+	 */
+	public void reset() {
+		failures = 0;
+	}
+}
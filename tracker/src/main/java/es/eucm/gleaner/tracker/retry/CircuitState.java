@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.retry;
+
+/**
+ * State of the connection with the storage, seen as a circuit breaker
+ */
+public enum CircuitState {
+	/**
+	 * Working normally
+	 */
+	CLOSED,
+	/**
+	 * After a failure, waiting for the backoff delay. Nothing is sent
+	 */
+	OPEN,
+	/**
+	 * The backoff delay passed. A single request probes the storage: if it
+	 * succeeds, the circuit closes; if not, it opens again with a longer
+	 * delay
+	 */
+	HALF_OPEN
+}
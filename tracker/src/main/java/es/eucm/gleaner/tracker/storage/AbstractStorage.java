@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.storage;
+
+import com.badlogic.gdx.Net.HttpResponseListener;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+
+/**
+ * Base for storages with defaults for the optional features of the tracker.
+ * Storages implementing {@link Storage} directly get these defaults too
+ */
+public abstract class AbstractStorage implements Storage {
+
+	/**
+	 * The tracker wants to send the given serialized batch. The buffer belongs
+	 * to the storage until the listener is notified, and must not be used
+	 * after that. By default, sends it as a String with
+	 * {@link #send(String, HttpResponseListener)}
+	 */
+	@SuppressWarnings("deprecation")
+	public void send(TraceBuffer data, HttpResponseListener flushListener) {
+		send(data.toString(), flushListener);
+	}
+
+	/**
+	 * @return the maximum size in bytes of each serialized batch, or 0 (the
+	 *         default) for no limit. The tracker splits larger backlogs into
+	 *         several batches
+	 */
+	public int getMaxRequestSize() {
+		return 0;
+	}
+}
@@ -0,0 +1,113 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.storage;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import es.eucm.gleaner.tracker.storage.LocalStorage.Chunk;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Copies the chunks into reusable direct buffers and writes them to a
+ * {@link FileChannel} with a single gathering write
+ */
+class ChannelFile implements LocalFile {
+
+	private static final int BUFFERS = 4;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final ByteBuffer[] buffers = new ByteBuffer[BUFFERS];
+
+	private FileChannel channel;
+
+	public ChannelFile() {
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i] = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+	}
+
+	@Override
+	public void open(FileHandle file) throws IOException {
+		file.parent().mkdirs();
+		channel = new FileOutputStream(file.file(), true).getChannel();
+	}
+
+	/**
+	 * Drains the buffers with a gathering write every time they are all
+	 * full
+	 */
+	@Override
+	public void write(Array<Chunk> chunks) throws IOException {
+		// A failed write may have left them flipped or partly filled
+		for (int i = 0; i < buffers.length; i++) {
+			buffers[i].clear();
+		}
+		int current = 0;
+		for (int i = 0; i < chunks.size; i++) {
+			Chunk chunk = chunks.get(i);
+			byte[] bytes = chunk.bytes();
+			int offset = 0;
+			int length = chunk.size();
+			while (length > 0) {
+				ByteBuffer buffer = buffers[current];
+				if (!buffer.hasRemaining()) {
+					if (++current == buffers.length) {
+						drain(current);
+						current = 0;
+					}
+					buffer = buffers[current];
+				}
+				int count = Math.min(length, buffer.remaining());
+				buffer.put(bytes, offset, count);
+				offset += count;
+				length -= count;
+			}
+		}
+		drain(current + 1);
+	}
+
+	private void drain(int count) throws IOException {
+		long remaining = 0;
+		for (int i = 0; i < count; i++) {
+			buffers[i].flip();
+			remaining += buffers[i].remaining();
+		}
+		while (remaining > 0) {
+			remaining -= channel.write(buffers, 0, count);
+		}
+		for (int i = 0; i < count; i++) {
+			buffers[i].clear();
+		}
+	}
+
+	@Override
+	public void sync() throws IOException {
+		channel.force(false);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (channel != null) {
+			channel.close();
+			channel = null;
+		}
+	}
+}
@@ -0,0 +1,45 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.storage;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import es.eucm.gleaner.tracker.storage.LocalStorage.Chunk;
+
+import java.io.IOException;
+
+/**
+ * A traces file of {@link LocalStorage}, open for appending. Created by
+ * {@link LocalFiles}, so platform specific implementations stay out of the
+ * GWT module
+ */
+interface LocalFile {
+
+	void open(FileHandle file) throws IOException;
+
+	/**
+	 * Writes the chunks with a single write. If it fails, part of them may
+	 * be in the file
+	 */
+	void write(Array<Chunk> chunks) throws IOException;
+
+	/**
+	 * Syncs the file to the storage device
+	 */
+	void sync() throws IOException;
+
+	void close() throws IOException;
+}
@@ -0,0 +1,84 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.storage;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.StreamUtils;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * File operations of {@link LocalStorage} that need java.io files or
+ * java.util.zip. GWT has neither, so its version of this class (in the emu
+ * folder of the module) only writes through streams, never syncs and never
+ * compresses.
+ */
+final class LocalFiles {
+
+	private LocalFiles() {
+	}
+
+	/**
+	 * @return a new file, writing through a {@link ChannelFile} or a
+	 *         {@link StreamFile}
+	 */
+	static LocalFile newFile(boolean channel) {
+		return channel ? new ChannelFile() : new StreamFile();
+	}
+
+	/**
+	 * Syncs the output to the storage device, if it writes to a file
+	 */
+	static void sync(OutputStream output) throws IOException {
+		if (output instanceof FileOutputStream) {
+			((FileOutputStream) output).getFD().sync();
+		}
+	}
+
+	/**
+	 * Compresses a rotated file into name.gz and deletes it. If it fails,
+	 * the rotated file is kept
+	 */
+	static void compress(FileHandle rotated) {
+		FileHandle compressed = rotated.sibling(rotated.name() + ".gz");
+		InputStream input = null;
+		OutputStream output = null;
+		try {
+			input = rotated.read();
+			output = new GZIPOutputStream(compressed.write(false));
+			byte[] bytes = new byte[8192];
+			int read;
+			while ((read = input.read(bytes)) != -1) {
+				output.write(bytes, 0, read);
+			}
+			output.close();
+			output = null;
+			input.close();
+			input = null;
+			rotated.delete();
+		} catch (IOException e) {
+			e.printStackTrace();
+			compressed.delete();
+		} finally {
+			StreamUtils.closeQuietly(input);
+			StreamUtils.closeQuietly(output);
+		}
+	}
+}
@@ -17,22 +17,103 @@ package es.eucm.gleaner.tracker.storage;
 
 import com.badlogic.gdx.Net.HttpResponseListener;
 import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.Pool.Poolable;
 import com.badlogic.gdx.utils.async.AsyncExecutor;
 import com.badlogic.gdx.utils.async.AsyncTask;
 import es.eucm.gleaner.tracker.AbstractTracker;
+import es.eucm.gleaner.tracker.Monitor;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
 import es.eucm.gleaner.tracker.http.SimpleHttpResponse;
 
 import java.io.IOException;
-import java.io.Writer;
+import java.io.UnsupportedEncodingException;
 
-public class LocalStorage implements Storage {
+/**
+ * Writes the traces to a local file. Batches sent while the writer is busy
+ * are written together, with a single write and a single sync (group
+ * commit). Listeners are notified once their data is durable, as defined by
+ * the {@link SyncPolicy}. If a write fails, the chunks already in the file
+ * are synced and acknowledged (sending them again would duplicate them) and
+ * only the rest fail. If a sync fails, the chunks it covered fail.
+ * 
+ * The file can be rotated by size and age (see
+ * {@link #setRotation(long, long, int, boolean)}): it is renamed to
+ * name.timestamp (optionally compressed to name.timestamp.gz in the
+ * background) and a new one is started.
+ * 
+ * By default, groups are written through the stream of the file. With
+ * {@link #setFileChannel(boolean)}, they are copied into reusable direct
+ * buffers and written to a file channel with a single gathering write.
+ * 
+ * In HTML5 there are no syncs, no channels and no compression: the file
+ * operations are in {@link LocalFiles}, which has its own GWT version
+ */
+public class LocalStorage extends AbstractStorage {
 
-	private AsyncExecutor asyncExecutor;
+	public enum SyncPolicy {
+		/**
+		 * Syncs the file to the device after each write. Listeners are
+		 * notified after the sync
+		 */
+		ALWAYS,
+		/**
+		 * Syncs the file at most once every sync interval. Listeners are
+		 * notified after the sync
+		 */
+		INTERVAL,
+		/**
+		 * Never syncs the file: listeners are notified once the data is
+		 * handed to the OS
+		 */
+		NEVER
+	}
 
-	private WriteTask writeTask;
+	private AsyncExecutor asyncExecutor;
 
 	private FileHandle tracesFile;
 
+	private SyncPolicy syncPolicy = SyncPolicy.NEVER;
+
+	private long syncInterval = 1000;
+
+	private long maxFileSize;
+
+	private long maxFileAge;
+
+	private int maxFiles;
+
+	private boolean compress;
+
+	private boolean fileChannel;
+
+	/**
+	 * Compresses rotated files and applies the retention limit
+	 */
+	private AsyncExecutor rotatedExecutor;
+
+	private final Pool<Chunk> chunks = new Pool<Chunk>() {
+		@Override
+		protected Chunk newObject() {
+			return new Chunk();
+		}
+	};
+
+	/**
+	 * Chunks waiting for the writer. Guarded by this
+	 */
+	private final Array<Chunk> pending = new Array<Chunk>();
+
+	/**
+	 * If the writer task is running. Guarded by this
+	 */
+	private boolean writing;
+
+	private boolean closed;
+
+	private final WriteTask writeTask = new WriteTask();
+
 	/**
 	 * @param tracesFile
 	 *            file where to write the traces
@@ -40,7 +121,50 @@ public class LocalStorage implements Storage {
 	public LocalStorage(FileHandle tracesFile) {
 		this.tracesFile = tracesFile;
 		asyncExecutor = new AsyncExecutor(1);
-		writeTask = new WriteTask(tracesFile);
+	}
+
+	/**
+	 * Sets when the file is synced to the storage device
+	 * 
+	 * @param syncInterval
+	 *            milliseconds between syncs, for {@link SyncPolicy#INTERVAL}
+	 */
+	public synchronized void setSyncPolicy(SyncPolicy syncPolicy,
+			long syncInterval) {
+		this.syncPolicy = syncPolicy;
+		this.syncInterval = syncInterval;
+	}
+
+	/**
+	 * Rotates the traces file. Rotation happens between writes, so a batch is
+	 * never split between files
+	 * 
+	 * @param maxFileSize
+	 *            size in bytes after which the file is rotated. 0 for no limit
+	 * @param maxFileAge
+	 *            milliseconds after which the file is rotated. 0 for no limit
+	 * @param maxFiles
+	 *            rotated files to keep, deleting the oldest. 0 to keep all
+	 * @param compress
+	 *            if rotated files are compressed with gzip. Ignored in HTML5
+	 */
+	public synchronized void setRotation(long maxFileSize, long maxFileAge,
+			int maxFiles, boolean compress) {
+		this.maxFileSize = maxFileSize;
+		this.maxFileAge = maxFileAge;
+		this.maxFiles = maxFiles;
+		this.compress = compress;
+		if (rotatedExecutor == null) {
+			rotatedExecutor = new AsyncExecutor(1);
+		}
+	}
+
+	/**
+	 * Writes through a file channel instead of a stream. Takes effect the
+	 * next time the file is opened. Ignored in HTML5
+	 */
+	public synchronized void setFileChannel(boolean fileChannel) {
+		this.fileChannel = fileChannel;
 	}
 
 	@Override
@@ -49,66 +173,393 @@ public class LocalStorage implements Storage {
 
 	@Override
 	public void start(HttpResponseListener startListener) {
-		writeTask = new WriteTask(tracesFile);
 		write("session," + System.currentTimeMillis() + "\n", startListener);
 	}
 
+	/**
+	 * @deprecated the tracker sends its batches through
+	 *             {@link #send(TraceBuffer, HttpResponseListener)}: override
+	 *             that one
+	 */
+	@Deprecated
 	@Override
 	public void send(String data, HttpResponseListener flushListener) {
 		write(data, flushListener);
 	}
 
+	@Override
+	public void send(TraceBuffer data, HttpResponseListener flushListener) {
+		Chunk chunk = obtain(flushListener);
+		chunk.buffer = data;
+		enqueue(chunk);
+	}
+
 	private void write(String data, HttpResponseListener listener) {
-		writeTask.setData(data, listener);
-		asyncExecutor.submit(writeTask);
+		Chunk chunk = obtain(listener);
+		try {
+			chunk.bytes = data.getBytes("UTF-8");
+		} catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+		enqueue(chunk);
+	}
+
+	private synchronized Chunk obtain(HttpResponseListener listener) {
+		Chunk chunk = chunks.obtain();
+		chunk.listener = listener;
+		return chunk;
+	}
+
+	private synchronized void enqueue(Chunk chunk) {
+		if (closed) {
+			chunk.listener.failed(new IOException("Storage closed"));
+			chunks.free(chunk);
+			return;
+		}
+		pending.add(chunk);
+		if (writing) {
+			Monitor.signalAll(this);
+		} else {
+			writing = true;
+			asyncExecutor.submit(writeTask);
+		}
 	}
 
+	/**
+	 * Writes what is pending and waits for it to be acknowledged
+	 */
 	@Override
 	public void close() {
+		synchronized (this) {
+			closed = true;
+			// Wakes up the writer to sync right away
+			Monitor.signalAll(this);
+		}
 		asyncExecutor.dispose();
 		writeTask.close();
+		if (rotatedExecutor != null) {
+			rotatedExecutor.dispose();
+		}
 	}
 
-	private static class WriteTask implements AsyncTask<Void> {
+	/**
+	 * A write of the tracker, waiting to be durable
+	 */
+	static class Chunk implements Poolable {
 
-		private Writer writer;
+		private TraceBuffer buffer;
 
-		private String data;
+		private byte[] bytes;
 
-		private HttpResponseListener responseListener;
+		private HttpResponseListener listener;
 
-		public WriteTask(FileHandle fileHandle) {
-			writer = fileHandle.writer(true);
+		byte[] bytes() {
+			return buffer != null ? buffer.getBytes() : bytes;
 		}
 
-		public void setData(String data, HttpResponseListener responseListener) {
-			this.data = data;
-			this.responseListener = responseListener;
+		int size() {
+			return buffer != null ? buffer.size() : bytes.length;
 		}
 
 		@Override
-		public Void call() throws Exception {
-			try {
-				synchronized (this) {
-					writer.append(data);
-					data = null;
-					writer.flush();
+		public void reset() {
+			buffer = null;
+			bytes = null;
+			listener = null;
+		}
+	}
+
+	/**
+	 * Compresses a rotated file and deletes the oldest ones beyond the
+	 * retention limit
+	 */
+	private class RotatedTask implements AsyncTask<Void> {
+
+		private final FileHandle rotated;
+
+		private final boolean compress;
+
+		private final int maxFiles;
+
+		public RotatedTask(FileHandle rotated, boolean compress, int maxFiles) {
+			this.rotated = rotated;
+			this.compress = compress;
+			this.maxFiles = maxFiles;
+		}
+
+		@Override
+		public Void call() {
+			if (compress) {
+				LocalFiles.compress(rotated);
+			}
+			if (maxFiles > 0) {
+				String prefix = tracesFile.name() + ".";
+				Array<String> names = new Array<String>();
+				for (FileHandle file : tracesFile.parent().list()) {
+					if (file.name().startsWith(prefix)) {
+						names.add(file.name());
+					}
+				}
+				// Same number of digits: sorted by timestamp
+				names.sort();
+				for (int i = 0; i < names.size - maxFiles; i++) {
+					tracesFile.sibling(names.get(i)).delete();
 				}
-				responseListener.handleHttpResponse(new SimpleHttpResponse("",
-						204));
-			} catch (Exception e) {
-				responseListener.failed(e);
 			}
 			return null;
 		}
+	}
 
-		public void close() {
-			if (writer != null) {
+	/**
+	 * Runs while there are chunks to write or to sync. Only one runs at a
+	 * time
+	 */
+	private class WriteTask implements AsyncTask<Void> {
+
+		/**
+		 * The open file, null if closed
+		 */
+		private LocalFile file;
+
+		private LocalFile streamFile;
+
+		/**
+		 * Kept between files, with its direct buffers
+		 */
+		private LocalFile channelFile;
+
+		private final Array<Chunk> batch = new Array<Chunk>();
+
+		/**
+		 * Chunks written but not yet synced
+		 */
+		private final Array<Chunk> unsynced = new Array<Chunk>();
+
+		private long lastSync = System.currentTimeMillis();
+
+		/**
+		 * Configuration, copied for each group
+		 */
+		private SyncPolicy policy;
+
+		private long rotateSize;
+
+		private long rotateAge;
+
+		private int keepFiles;
+
+		private boolean compressRotated;
+
+		private boolean useChannel;
+
+		private long fileSize;
+
+		private long openedAt;
+
+		@Override
+		public Void call() {
+			while (true) {
+				boolean closing;
+				// Set if it could not wait for the interval, so it doesn't
+				// spin until it ends
+				boolean syncNow = false;
+				synchronized (LocalStorage.this) {
+					while (pending.size == 0 && unsynced.size > 0 && !closed) {
+						long wait = lastSync + syncInterval
+								- System.currentTimeMillis();
+						if (wait <= 0) {
+							break;
+						}
+						if (!Monitor.await(LocalStorage.this, wait)) {
+							syncNow = true;
+							break;
+						}
+					}
+					if (pending.size == 0 && unsynced.size == 0) {
+						writing = false;
+						return null;
+					}
+					batch.addAll(pending);
+					pending.clear();
+					policy = syncPolicy;
+					closing = closed;
+					rotateSize = maxFileSize;
+					rotateAge = maxFileAge;
+					keepFiles = maxFiles;
+					compressRotated = compress;
+					useChannel = fileChannel;
+				}
+
+				IOException error = null;
 				try {
-					writer.close();
+					write();
 				} catch (IOException e) {
-					e.printStackTrace();
+					error = e;
 				}
+				long now = System.currentTimeMillis();
+				if (policy == SyncPolicy.NEVER) {
+					finish(null);
+				} else if (error != null
+						|| policy == SyncPolicy.ALWAYS
+						|| (policy == SyncPolicy.INTERVAL && (closing
+								|| syncNow || now - lastSync >= syncInterval))) {
+					// After a failed write, what made it to the file is
+					// synced, so it is not sent again
+					try {
+						sync();
+						lastSync = now;
+						finish(null);
+					} catch (IOException e) {
+						finish(e);
+					}
+				}
+				if (error != null) {
+					unsynced.addAll(batch);
+					batch.clear();
+					finish(error);
+				}
+			}
+		}
+
+		/**
+		 * Writes the batch with a single write
+		 */
+		private void write() throws IOException {
+			if (batch.size == 0) {
+				return;
+			}
+			int size = 0;
+			for (int i = 0; i < batch.size; i++) {
+				size += batch.get(i).size();
+			}
+			if (file == null) {
+				open();
+			} else if (fileSize > 0
+					&& ((rotateSize > 0 && fileSize + size > rotateSize) || (rotateAge > 0 && System
+							.currentTimeMillis() - openedAt >= rotateAge))) {
+				rotate();
+				open();
+			}
+			try {
+				file.write(batch);
+			} catch (IOException e) {
+				keepWritten(tracesFile.length() - fileSize);
+				throw e;
+			}
+			unsynced.addAll(batch);
+			batch.clear();
+			fileSize += size;
+		}
+
+		/**
+		 * After a failed write, moves the chunks that made it whole to the
+		 * file from the batch to the unsynced ones
+		 * 
+		 * @param written
+		 *            bytes of the batch in the file
+		 */
+		private void keepWritten(long written) {
+			int count = 0;
+			while (count < batch.size && batch.get(count).size() <= written) {
+				written -= batch.get(count).size();
+				unsynced.add(batch.get(count++));
+			}
+			if (count > 0) {
+				batch.removeRange(0, count - 1);
+			}
+			fileSize = tracesFile.length();
+		}
+
+		private void open() throws IOException {
+			if (useChannel) {
+				if (channelFile == null) {
+					channelFile = LocalFiles.newFile(true);
+				}
+				channelFile.open(tracesFile);
+				file = channelFile;
+			} else {
+				if (streamFile == null) {
+					streamFile = LocalFiles.newFile(false);
+				}
+				streamFile.open(tracesFile);
+				file = streamFile;
+			}
+			fileSize = tracesFile.length();
+			openedAt = System.currentTimeMillis();
+		}
+
+		/**
+		 * Closes the current file, with everything written in it durable,
+		 * and renames it
+		 */
+		private void rotate() throws IOException {
+			if (policy != SyncPolicy.NEVER) {
+				try {
+					sync();
+				} catch (IOException e) {
+					// Not to be synced again: a second sync may not report
+					// what was lost
+					finish(e);
+					throw e;
+				}
+				lastSync = System.currentTimeMillis();
+			}
+			finish(null);
+			closeOutput();
+
+			FileHandle rotated;
+			long timestamp = System.currentTimeMillis();
+			do {
+				rotated = tracesFile.sibling(tracesFile.name() + "."
+						+ timestamp++);
+			} while (rotated.exists()
+					|| rotated.sibling(rotated.name() + ".gz").exists());
+			tracesFile.moveTo(rotated);
+			rotatedExecutor.submit(new RotatedTask(rotated, compressRotated,
+					keepFiles));
+		}
+
+		private void sync() throws IOException {
+			if (file != null) {
+				file.sync();
+			}
+		}
+
+		/**
+		 * Notifies the listeners of the unsynced chunks
+		 * 
+		 * @param error
+		 *            null if they were written
+		 */
+		private void finish(IOException error) {
+			for (int i = 0; i < unsynced.size; i++) {
+				Chunk chunk = unsynced.get(i);
+				if (error == null) {
+					chunk.listener.handleHttpResponse(new SimpleHttpResponse(
+							"", 204));
+				} else {
+					chunk.listener.failed(error);
+				}
+			}
+			synchronized (LocalStorage.this) {
+				chunks.freeAll(unsynced);
+			}
+			unsynced.clear();
+		}
+
+		private void closeOutput() throws IOException {
+			if (file != null) {
+				LocalFile closing = file;
+				file = null;
+				closing.close();
+			}
+		}
+
+		public void close() {
+			try {
+				closeOutput();
+			} catch (IOException e) {
+				e.printStackTrace();
 			}
 		}
 	}
@@ -15,19 +15,35 @@
  */
 package es.eucm.gleaner.tracker.storage;
 
+import com.badlogic.gdx.Application.ApplicationType;
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Net;
+import com.badlogic.gdx.Net.HttpRequest;
+import com.badlogic.gdx.Net.HttpResponse;
 import com.badlogic.gdx.Net.HttpResponseListener;
 import com.badlogic.gdx.net.HttpRequestBuilder;
 import com.badlogic.gdx.utils.ObjectMap;
+import com.badlogic.gdx.utils.Pool;
+import com.badlogic.gdx.utils.Pool.Poolable;
+import com.badlogic.gdx.utils.async.AsyncExecutor;
+import com.badlogic.gdx.utils.async.AsyncTask;
 import es.eucm.gleaner.tracker.AbstractTracker;
 import es.eucm.gleaner.tracker.AbstractTracker.StartListener;
+import es.eucm.gleaner.tracker.codec.ContentCodec;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
 
-public class NetStorage implements Storage {
+public class NetStorage extends AbstractStorage {
 
 	public static final String REST_API_TRACK = "track/";
 
 	public static final String REST_API_START = "start/";
 
+	/**
+	 * Header with the sequence number of each batch, to restore their order
+	 * when several are sent at once
+	 */
+	public static final String BATCH_SEQUENCE_HEADER = "X-Batch-Sequence";
+
 	private Net net;
 
 	private AbstractTracker tracker;
@@ -44,6 +60,22 @@ public class NetStorage implements Storage {
 
 	private String authorization;
 
+	private ContentCodec codec;
+
+	private int maxRequestSize;
+
+	/**
+	 * Encodes the payloads off the game thread, when there is a codec
+	 */
+	private AsyncExecutor executor;
+
+	private final Pool<EncodeTask> encodeTasks = new Pool<EncodeTask>() {
+		@Override
+		protected EncodeTask newObject() {
+			return new EncodeTask();
+		}
+	};
+
 	/**
 	 * @param net
 	 *            an object to interact with the network
@@ -69,6 +101,32 @@ public class NetStorage implements Storage {
 		this.authorization = authorization;
 	}
 
+	/**
+	 * Sets the maximum size in bytes of the payload of each request, before
+	 * encoding it. 0 (the default) for no limit
+	 */
+	public void setMaxRequestSize(int maxRequestSize) {
+		this.maxRequestSize = maxRequestSize;
+	}
+
+	@Override
+	public int getMaxRequestSize() {
+		return maxRequestSize;
+	}
+
+	/**
+	 * Sets the codec to encode (e.g., compress) the batches of traces before
+	 * sending them. Encoding happens in a background thread. Null (the
+	 * default) sends them as they are. Ignored in HTML5, where requests can
+	 * only carry text
+	 */
+	public void setCodec(ContentCodec codec) {
+		this.codec = codec;
+		if (codec != null && executor == null) {
+			executor = new AsyncExecutor(1);
+		}
+	}
+
 	@Override
 	public void start(HttpResponseListener startListener) {
 		net.sendHttpRequest(
@@ -79,6 +137,12 @@ public class NetStorage implements Storage {
 				netStartListener);
 	}
 
+	/**
+	 * @deprecated the tracker sends its batches through
+	 *             {@link #send(TraceBuffer, HttpResponseListener)}: override
+	 *             that one
+	 */
+	@Deprecated
 	@Override
 	public void send(String data, HttpResponseListener flushListener) {
 		net.sendHttpRequest(httpBuilder.newRequest().url(host + REST_API_TRACK)
@@ -88,8 +152,117 @@ public class NetStorage implements Storage {
 				.content(data).build(), flushListener);
 	}
 
+	@Override
+	public void send(TraceBuffer data, HttpResponseListener flushListener) {
+		if (codec == null || isWebGL()) {
+			send(data, null, data.getSequence(), flushListener);
+		} else {
+			EncodeTask task;
+			synchronized (encodeTasks) {
+				task = encodeTasks.obtain();
+			}
+			task.codec = codec;
+			task.data = data;
+			task.listener = flushListener;
+			executor.submit(task);
+		}
+	}
+
+	private void send(TraceBuffer data, String contentEncoding,
+			long sequence, HttpResponseListener flushListener) {
+		HttpRequest request;
+		synchronized (httpBuilder) {
+			httpBuilder.newRequest().url(host + REST_API_TRACK)
+					.header("Content-Type", tracker.contentType())
+					.method("POST").header("Authorization", authToken)
+					.header(BATCH_SEQUENCE_HEADER, Long.toString(sequence))
+					.followRedirects(true);
+			if (isWebGL()) {
+				// GwtNet ignores content streams
+				httpBuilder.content(data.toString());
+			} else {
+				httpBuilder.content(data.asInputStream(), data.size());
+			}
+			if (contentEncoding != null) {
+				httpBuilder.header("Content-Encoding", contentEncoding);
+			}
+			request = httpBuilder.build();
+		}
+		net.sendHttpRequest(request, flushListener);
+	}
+
+	private static boolean isWebGL() {
+		return Gdx.app != null && Gdx.app.getType() == ApplicationType.WebGL;
+	}
+
 	@Override
 	public void close() {
+		if (executor != null) {
+			executor.dispose();
+			executor = null;
+		}
+		if (codec != null) {
+			codec.dispose();
+		}
+	}
+
+	/**
+	 * Encodes a batch with the codec and sends it. Notifies the flush
+	 * listener of the batch
+	 */
+	private class EncodeTask implements AsyncTask<Void>, HttpResponseListener,
+			Poolable {
+
+		private ContentCodec codec;
+
+		private TraceBuffer data;
+
+		private HttpResponseListener listener;
+
+		private final TraceBuffer encoded = new TraceBuffer();
+
+		@Override
+		public Void call() {
+			try {
+				codec.encode(data, encoded);
+			} catch (RuntimeException e) {
+				failed(e);
+				return null;
+			}
+			send(encoded, codec.contentEncoding(), data.getSequence(), this);
+			return null;
+		}
+
+		@Override
+		public void handleHttpResponse(HttpResponse httpResponse) {
+			finished().handleHttpResponse(httpResponse);
+		}
+
+		@Override
+		public void failed(Throwable t) {
+			finished().failed(t);
+		}
+
+		@Override
+		public void cancelled() {
+			finished().cancelled();
+		}
+
+		private HttpResponseListener finished() {
+			HttpResponseListener listener = this.listener;
+			synchronized (encodeTasks) {
+				encodeTasks.free(this);
+			}
+			return listener;
+		}
+
+		@Override
+		public void reset() {
+			codec = null;
+			data = null;
+			listener = null;
+			encoded.reset();
+		}
 	}
 
 	public class NetStartListener extends StartListener {
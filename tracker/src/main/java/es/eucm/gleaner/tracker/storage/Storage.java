@@ -29,7 +29,14 @@ public interface Storage {
 
 	/**
 	 * The tracker wants to send the given data
+	 * 
+	 * @deprecated extend {@link AbstractStorage} and override its
+	 *             send(TraceBuffer, HttpResponseListener), which gets the
+	 *             batches already encoded. This method is only called for
+	 *             storages implementing this interface directly, and by the
+	 *             default of that one
 	 */
+	@Deprecated
 	void send(String data, HttpResponseListener flushListener);
 
 	/**
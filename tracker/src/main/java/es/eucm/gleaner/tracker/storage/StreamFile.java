@@ -0,0 +1,64 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.storage;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+import es.eucm.gleaner.tracker.storage.LocalStorage.Chunk;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes through the stream of the {@link FileHandle}, copying the chunks
+ * into a single buffer first
+ */
+class StreamFile implements LocalFile {
+
+	private final TraceBuffer group = new TraceBuffer();
+
+	private OutputStream output;
+
+	@Override
+	public void open(FileHandle file) {
+		output = file.write(true);
+	}
+
+	@Override
+	public void write(Array<Chunk> chunks) throws IOException {
+		group.reset();
+		for (int i = 0; i < chunks.size; i++) {
+			Chunk chunk = chunks.get(i);
+			group.append(chunk.bytes(), 0, chunk.size());
+		}
+		group.writeTo(output);
+		output.flush();
+	}
+
+	@Override
+	public void sync() throws IOException {
+		LocalFiles.sync(output);
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (output != null) {
+			output.close();
+			output = null;
+		}
+	}
+}
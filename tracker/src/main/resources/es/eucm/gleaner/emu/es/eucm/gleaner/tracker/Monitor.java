@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker;
+
+/**
+ * GWT version of {@link Monitor}: there is a single thread, so nothing
+ * could wake a waiting one
+ */
+public final class Monitor {
+
+	private static final Object THREAD = new Object();
+
+	private Monitor() {
+	}
+
+	public static boolean await(Object lock, long timeout) {
+		return false;
+	}
+
+	public static void signalAll(Object lock) {
+	}
+
+	public static Object currentThread() {
+		return THREAD;
+	}
+}
@@ -0,0 +1,67 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.atomic;
+
+/**
+ * GWT version of {@link AtomicBoolean}: there is a single thread, so a plain
+ * field will do
+ */
+public class AtomicBoolean {
+
+	private boolean value;
+
+	public AtomicBoolean(boolean initialValue) {
+		value = initialValue;
+	}
+
+	public AtomicBoolean() {
+	}
+
+	public final boolean get() {
+		return value;
+	}
+
+	public final boolean compareAndSet(boolean expect, boolean update) {
+		if (value != expect) {
+			return false;
+		}
+		value = update;
+		return true;
+	}
+
+	public boolean weakCompareAndSet(boolean expect, boolean update) {
+		return compareAndSet(expect, update);
+	}
+
+	public final void set(boolean newValue) {
+		value = newValue;
+	}
+
+	public final void lazySet(boolean newValue) {
+		value = newValue;
+	}
+
+	public final boolean getAndSet(boolean newValue) {
+		boolean current = value;
+		value = newValue;
+		return current;
+	}
+
+	@Override
+	public String toString() {
+		return Boolean.toString(value);
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.atomic;
+
+/**
+ * GWT version of {@link AtomicLong}: there is a single thread, so a plain
+ * field will do
+ */
+public class AtomicLong extends Number {
+
+	private long value;
+
+	public AtomicLong(long initialValue) {
+		value = initialValue;
+	}
+
+	public AtomicLong() {
+	}
+
+	public final long get() {
+		return value;
+	}
+
+	public final void set(long newValue) {
+		value = newValue;
+	}
+
+	public final void lazySet(long newValue) {
+		value = newValue;
+	}
+
+	public final long getAndSet(long newValue) {
+		long current = value;
+		value = newValue;
+		return current;
+	}
+
+	public final boolean compareAndSet(long expect, long update) {
+		if (value != expect) {
+			return false;
+		}
+		value = update;
+		return true;
+	}
+
+	public final boolean weakCompareAndSet(long expect, long update) {
+		return compareAndSet(expect, update);
+	}
+
+	public final long getAndIncrement() {
+		return value++;
+	}
+
+	public final long getAndDecrement() {
+		return value--;
+	}
+
+	public final long getAndAdd(long delta) {
+		long current = value;
+		value += delta;
+		return current;
+	}
+
+	public final long incrementAndGet() {
+		return ++value;
+	}
+
+	public final long decrementAndGet() {
+		return --value;
+	}
+
+	public final long addAndGet(long delta) {
+		value += delta;
+		return value;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(value);
+	}
+
+	@Override
+	public int intValue() {
+		return (int) value;
+	}
+
+	@Override
+	public long longValue() {
+		return value;
+	}
+
+	@Override
+	public float floatValue() {
+		return (float) value;
+	}
+
+	@Override
+	public double doubleValue() {
+		return (double) value;
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.atomic;
+
+/**
+ * GWT version of {@link AtomicReferenceArray}: there is a single thread, so a
+ * plain array will do
+ */
+public class AtomicReferenceArray<E> {
+
+	private final Object[] array;
+
+	public AtomicReferenceArray(int length) {
+		array = new Object[length];
+	}
+
+	public AtomicReferenceArray(E[] array) {
+		this.array = new Object[array.length];
+		System.arraycopy(array, 0, this.array, 0, array.length);
+	}
+
+	public final int length() {
+		return array.length;
+	}
+
+	@SuppressWarnings("unchecked")
+	public final E get(int i) {
+		return (E) array[i];
+	}
+
+	public final void set(int i, E newValue) {
+		array[i] = newValue;
+	}
+
+	public final void lazySet(int i, E newValue) {
+		array[i] = newValue;
+	}
+
+	public final E getAndSet(int i, E newValue) {
+		E current = get(i);
+		array[i] = newValue;
+		return current;
+	}
+
+	public final boolean compareAndSet(int i, E expect, E update) {
+		if (array[i] != expect) {
+			return false;
+		}
+		array[i] = update;
+		return true;
+	}
+
+	public final boolean weakCompareAndSet(int i, E expect, E update) {
+		return compareAndSet(i, expect, update);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		for (int i = 0; i < array.length; i++) {
+			if (i > 0) {
+				builder.append(", ");
+			}
+			builder.append(array[i]);
+		}
+		return builder.append(']').toString();
+	}
+}
@@ -0,0 +1,40 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.storage;
+
+import com.badlogic.gdx.files.FileHandle;
+
+import java.io.OutputStream;
+
+/**
+ * GWT version of {@link LocalFiles}: no file channels, no file descriptors
+ * to sync and no java.util.zip
+ */
+final class LocalFiles {
+
+	private LocalFiles() {
+	}
+
+	static LocalFile newFile(boolean channel) {
+		return new StreamFile();
+	}
+
+	static void sync(OutputStream output) {
+	}
+
+	static void compress(FileHandle rotated) {
+	}
+}
@@ -15,12 +15,42 @@
  */
 package es.eucm.gleaner.tracker;
 
+import com.badlogic.gdx.Net.HttpResponseListener;
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonValue;
+import com.badlogic.gdx.utils.ObjectMap;
+import es.eucm.gleaner.tracker.AbstractTracker.CloseHandle;
+import es.eucm.gleaner.tracker.AbstractTracker.Delivery;
+import es.eucm.gleaner.tracker.AbstractTracker.TraceListener;
+import es.eucm.gleaner.tracker.XAPITracker.Accessible;
 import es.eucm.gleaner.tracker.XAPITracker.Completable;
+import es.eucm.gleaner.tracker.XAPITracker.Extension;
+import es.eucm.gleaner.tracker.XAPITracker.Verb;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+import es.eucm.gleaner.tracker.http.SimpleHttpResponse;
+import es.eucm.gleaner.tracker.journal.MappedJournal;
+import es.eucm.gleaner.tracker.journal.TraceJournal;
+import es.eucm.gleaner.tracker.queue.OverflowPolicy;
+import es.eucm.gleaner.tracker.retry.Backoff;
+import es.eucm.gleaner.tracker.retry.CircuitState;
+import es.eucm.gleaner.tracker.storage.Storage;
 import es.eucm.gleaner.tracker.storage.TestStorage;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.File;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TrackerTest {
 
@@ -44,6 +74,740 @@ public class TrackerTest {
 		tracker.update(0);
 	}
 
+	@Test
+	public void testCsvFormat() {
+		generateAllTraces();
+		String[] lines = storage.data.split("\n");
+		assertEquals(7, lines.length);
+		assertTrue(lines[0].matches("[0-9]+,screen,menu"));
+		assertTrue(lines[1].matches("[0-9]+,selected,options,start"));
+		assertTrue(lines[3].matches("[0-9]+,set,score,1000"));
+		assertTrue(lines[5].matches("[0-9]+,click,100.0,200.0,object1"));
+		assertTrue(lines[6].matches("[0-9]+,click,50.0,70.0"));
+	}
+
+	@Test
+	public void testCsvEscaping() {
+		CsvTracker tracker = new CsvTracker(storage = new TestStorage());
+		tracker.start();
+		tracker.trace("a, b", "\"quoted\"", "plain");
+		tracker.increase("score", 0.25f);
+		tracker.requestFlush();
+		tracker.update(0);
+		String[] lines = storage.data.split("\n");
+		assertTrue(lines[0].endsWith(",\"a, b\",\"\\\"quoted\\\"\",plain"));
+		assertTrue(lines[1].endsWith(",increased,score,0.25"));
+	}
+
+	@Test
+	public void testDefaultSerializer() {
+		AbstractTracker tracker = new AbstractTracker(
+				storage = new TestStorage()) {
+			@Override
+			public void startData(ObjectMap data) {
+			}
+		};
+		tracker.start();
+		tracker.addTrace("a");
+		tracker.addTrace("b");
+		tracker.requestFlush();
+		tracker.update(0);
+		assertEquals("a\nb\n", storage.data);
+		assertEquals("text/plain", tracker.getSerializer().contentType());
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void testPlainStorage() {
+		// Written against the Storage interface before batches were buffers
+		final StringBuilder data = new StringBuilder();
+		CsvTracker tracker = new CsvTracker(new Storage() {
+			@Override
+			public void setTracker(AbstractTracker tracker) {
+			}
+
+			@Override
+			public void start(HttpResponseListener startListener) {
+				startListener.handleHttpResponse(new SimpleHttpResponse("",
+						200));
+			}
+
+			@Override
+			public void send(String batch, HttpResponseListener flushListener) {
+				data.append(batch);
+				flushListener.handleHttpResponse(new SimpleHttpResponse("",
+						204));
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		tracker.start();
+		tracker.zone("zone1");
+		tracker.requestFlush();
+		tracker.update(0);
+		assertTrue(data.toString().matches("[0-9]+,zone,zone1\\n"));
+		assertEquals(0, tracker.getHeldTraces());
+	}
+
+	@Test
+	public void testTraceEventsFormattedOnFlush() {
+		CsvTracker tracker = new CsvTracker(storage = new TestStorage());
+		tracker.start();
+		final int[] formatted = new int[1];
+		tracker.addTrace(new TraceEvent(1000) {
+			@Override
+			public int length() {
+				return 10;
+			}
+
+			@Override
+			protected String format() {
+				formatted[0]++;
+				return timestamp + ",custom";
+			}
+		}, AbstractTracker.PRIORITY_NORMAL);
+		tracker.set("score", 2.5f);
+		assertEquals(0, formatted[0]);
+		tracker.requestFlush();
+		tracker.update(0);
+		assertEquals(1, formatted[0]);
+		String[] lines = storage.data.split("\n");
+		assertEquals("1000,custom", lines[0]);
+		assertTrue(lines[1].matches("[0-9]+,set,score,2.5"));
+	}
+
+	@Test
+	public void testFailedFlushKeepsTraces() {
+		CsvTracker tracker = new CsvTracker(storage = new TestStorage() {
+			boolean fail = true;
+
+			@Override
+			public void send(TraceBuffer data,
+					HttpResponseListener flushListener) {
+				if (fail) {
+					fail = false;
+					flushListener.failed(new Exception());
+				} else {
+					super.send(data, flushListener);
+				}
+			}
+		});
+		tracker.start();
+		tracker.zone("zone1");
+		tracker.requestFlush();
+		tracker.update(0);
+		assertEquals("", storage.data);
+
+		tracker.zone("zone2");
+		tracker.requestFlush();
+		// After the backoff delay (at most 1 second after one failure)
+		tracker.update(1);
+		assertTrue(storage.data.matches("[0-9]+,zone,zone1\n[0-9]+,zone,zone2\n"));
+	}
+
+	@Test
+	public void testBackoff() {
+		final boolean[] fail = { true };
+		final int[] requests = new int[1];
+		CsvTracker tracker = new CsvTracker(storage = new TestStorage() {
+			@Override
+			public void start(HttpResponseListener startListener) {
+				requests[0]++;
+				if (fail[0]) {
+					startListener.failed(new Exception());
+				} else {
+					super.start(startListener);
+				}
+			}
+
+			@Override
+			public void send(TraceBuffer data,
+					HttpResponseListener flushListener) {
+				requests[0]++;
+				if (fail[0]) {
+					flushListener.failed(new Exception());
+				} else {
+					super.send(data, flushListener);
+				}
+			}
+		});
+		tracker.setBackoff(new Backoff(1, 4, new Random(0)));
+		tracker.start();
+		assertEquals(CircuitState.OPEN, tracker.getCircuitState());
+		assertTrue(tracker.getRetryDelay() <= 1);
+		// Quiet: nothing to retry
+		tracker.update(tracker.getRetryDelay());
+		assertEquals(CircuitState.HALF_OPEN, tracker.getCircuitState());
+		assertEquals(1, requests[0]);
+
+		// The delay grows with the failures, up to the maximum
+		tracker.zone("zone1");
+		tracker.requestFlush();
+		tracker.update(0);
+		for (int i = 2; i < 8; i++) {
+			assertEquals(i, requests[0]);
+			assertEquals(CircuitState.OPEN, tracker.getCircuitState());
+			assertTrue(tracker.getRetryDelay() <= Math.min(4, 1 << (i - 1)));
+			// Nothing is tried while the circuit is open
+			tracker.update(tracker.getRetryDelay() / 2);
+			assertEquals(i, requests[0]);
+			// The pending flush probes the storage as soon as it can
+			if (i == 7) {
+				fail[0] = false;
+			}
+			tracker.update(tracker.getRetryDelay());
+		}
+		assertEquals(CircuitState.CLOSED, tracker.getCircuitState());
+		assertTrue(storage.data.matches("[0-9]+,zone,zone1\n"));
+	}
+
+	@Test
+	public void testPipelinedBatches() {
+		final Array<TraceBuffer> buffers = new Array<TraceBuffer>();
+		final Array<HttpResponseListener> listeners =
+				new Array<HttpResponseListener>();
+		CsvTracker tracker = new CsvTracker(storage = new TestStorage() {
+			@Override
+			public void send(TraceBuffer data,
+					HttpResponseListener flushListener) {
+				buffers.add(data);
+				listeners.add(flushListener);
+			}
+		});
+		tracker.setMaxInFlight(3);
+		tracker.start();
+		for (int i = 0; i < 4; i++) {
+			tracker.zone("zone" + i);
+			tracker.requestFlush();
+			tracker.update(0);
+		}
+		// Only 3 in flight
+		assertEquals(3, buffers.size);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(i, buffers.get(i).getSequence());
+			assertTrue(buffers.get(i).toString().contains("zone" + i));
+		}
+
+		listeners.get(1).failed(new Exception());
+		listeners.get(0).handleHttpResponse(new SimpleHttpResponse("", 204));
+		listeners.get(2).handleHttpResponse(new SimpleHttpResponse("", 204));
+		assertEquals(2, tracker.getHeldTraces());
+
+		// The failed batch goes first, with its sequence number
+		tracker.requestFlush();
+		tracker.update(0);
+		assertEquals(5, buffers.size);
+		assertEquals(1, buffers.get(3).getSequence());
+		assertTrue(buffers.get(3).toString().contains("zone1"));
+		assertEquals(3, buffers.get(4).getSequence());
+		assertTrue(buffers.get(4).toString().contains("zone3"));
+	}
+
+	private CsvTracker budgetTracker(OverflowPolicy policy) {
+		CsvTracker tracker = new CsvTracker(storage = new TestStorage() {
+			@Override
+			public void send(TraceBuffer data,
+					HttpResponseListener flushListener) {
+				// Never acknowledged
+			}
+		});
+		tracker.setBudget(3, Long.MAX_VALUE, policy);
+		tracker.setBlockTimeout(10);
+		tracker.start();
+		return tracker;
+	}
+
+	@Test
+	public void testFlushThresholds() {
+		CsvTracker tracker = new CsvTracker(storage = new TestStorage(), 10);
+		tracker.setFlushThresholds(3, Long.MAX_VALUE);
+		tracker.setLinger(0.5f, 2);
+		tracker.start();
+		tracker.update(0);
+
+		// Below the threshold, it waits for the interval
+		tracker.zone("zone1");
+		tracker.zone("zone2");
+		tracker.update(1);
+		assertEquals("", storage.data);
+
+		// Over the threshold, it flushes right away
+		tracker.zone("zone3");
+		tracker.update(0.1f);
+		assertEquals(3, storage.data.split("\n").length);
+
+		// A burst does not flush until it has lingered for a while
+		storage.data = "";
+		for (int i = 0; i < 5; i++) {
+			tracker.zone("zone" + i);
+		}
+		tracker.update(0.1f);
+		assertEquals("", storage.data);
+		tracker.update(0.4f);
+		assertEquals(5, storage.data.split("\n").length);
+
+		// A trickle is sent after the maximum linger
+		storage.data = "";
+		tracker.zone("zone1");
+		tracker.update(1.5f);
+		assertEquals("", storage.data);
+		tracker.update(0.5f);
+		assertTrue(storage.data.matches("[0-9]+,zone,zone1\n"));
+	}
+
+	@Test
+	public void testQuietUpdatesDoNotFlush() {
+		final int[] sent = new int[1];
+		CsvTracker tracker = new CsvTracker(storage = new TestStorage() {
+			@Override
+			public void send(TraceBuffer data,
+					HttpResponseListener flushListener) {
+				sent[0]++;
+				super.send(data, flushListener);
+			}
+		}, 1);
+		tracker.start();
+		for (int i = 0; i < 10; i++) {
+			tracker.update(1);
+		}
+		assertEquals(0, sent[0]);
+		tracker.zone("zone1");
+		tracker.update(1);
+		assertEquals(1, sent[0]);
+	}
+
+	@Test
+	public void testJournalReplay() throws Exception {
+		File file = File.createTempFile("journal", "test");
+		file.delete();
+		FileHandle directory = new FileHandle(file);
+
+		final Array<HttpResponseListener> listeners =
+				new Array<HttpResponseListener>();
+		CsvTracker tracker = new CsvTracker(new TestStorage() {
+			@Override
+			public void send(TraceBuffer data,
+					HttpResponseListener flushListener) {
+				listeners.add(flushListener);
+			}
+		});
+		tracker.setMaxInFlight(2);
+		tracker.setJournal(new MappedJournal(directory));
+		tracker.start();
+		tracker.zone("zone1");
+		tracker.requestFlush();
+		tracker.update(0);
+		tracker.zone("zone2");
+		tracker.requestFlush();
+		tracker.update(0);
+		tracker.zone("zone3");
+		tracker.update(0);
+		// Only the second batch is acknowledged
+		listeners.get(1).handleHttpResponse(new SimpleHttpResponse("", 204));
+		// ... and the game crashes
+
+		tracker = new CsvTracker(storage = new TestStorage());
+		tracker.setJournal(new MappedJournal(directory));
+		tracker.start();
+		tracker.requestFlush();
+		tracker.update(0);
+		// The second batch is sent again: the checkpoint is at the first
+		// trace not acknowledged
+		String[] lines = storage.data.split("\n");
+		assertEquals(3, lines.length);
+		assertTrue(lines[0].endsWith(",zone,zone1"));
+		assertTrue(lines[1].endsWith(",zone,zone2"));
+		assertTrue(lines[2].endsWith(",zone,zone3"));
+	}
+
+	@Test
+	public void testFlushScheduler() throws Exception {
+		FlushScheduler scheduler = new FlushScheduler(0.01f);
+		// The interval flushes without the game loop
+		final CountDownLatch intervalSent = new CountDownLatch(1);
+		CsvTracker intervalTracker = new CsvTracker(new TestStorage() {
+			@Override
+			public void send(String data, HttpResponseListener flushListener) {
+				super.send(data, flushListener);
+				intervalSent.countDown();
+			}
+		}, 0.05f);
+		scheduler.add(intervalTracker);
+		intervalTracker.start();
+		intervalTracker.zone("zone1");
+		assertTrue(intervalSent.await(2, TimeUnit.SECONDS));
+
+		// Requested flushes too, sharing the scheduler
+		final CountDownLatch requestedSent = new CountDownLatch(1);
+		CsvTracker tracker = new CsvTracker(storage = new TestStorage() {
+			@Override
+			public void send(String data, HttpResponseListener flushListener) {
+				super.send(data, flushListener);
+				requestedSent.countDown();
+			}
+		});
+		scheduler.add(tracker);
+		tracker.start();
+		tracker.screen("menu");
+		assertFalse(requestedSent.await(100, TimeUnit.MILLISECONDS));
+		tracker.requestFlush();
+		assertTrue(requestedSent.await(2, TimeUnit.SECONDS));
+		assertTrue(storage.data.matches("[0-9]+,screen,menu\\n"));
+
+		CloseHandle handle = tracker.closeAsync(1000);
+		assertTrue(handle.await(1000));
+		assertEquals(0, handle.getLeftovers());
+		scheduler.dispose();
+	}
+
+	@Test
+	public void testFlushSchedulerInterrupted() throws Exception {
+		FlushScheduler scheduler = new FlushScheduler(0.01f);
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		CsvTracker tracker = new CsvTracker(storage = new TestStorage() {
+			@Override
+			public void send(String data, HttpResponseListener flushListener) {
+				super.send(data, flushListener);
+				if (interrupted.getCount() > 0) {
+					Thread.currentThread().interrupt();
+					interrupted.countDown();
+				}
+			}
+		});
+		scheduler.add(tracker);
+		tracker.start();
+		tracker.zone("zone1");
+		tracker.requestFlush();
+		assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+		Thread.sleep(100);
+
+		// The tracker is back in the game loop
+		tracker.zone("zone2");
+		tracker.requestFlush();
+		tracker.update(0);
+		assertTrue(storage.data.endsWith(",zone,zone2\n"));
+		try {
+			scheduler.add(tracker);
+			fail("Scheduler should be disposed");
+		} catch (IllegalStateException e) {
+			// Expected
+		}
+	}
+
+	@Test
+	public void testListenerDelivery() throws Exception {
+		CsvTracker tracker = new CsvTracker(storage = new TestStorage());
+		tracker.start();
+		final Array<String> sync = new Array<String>();
+		final Array<String> perFrame = new Array<String>();
+		final Array<String> async = new Array<String>();
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch delivered = new CountDownLatch(2);
+		tracker.addTraceListener(new TraceListener() {
+			@Override
+			public void trace(String trace) {
+				sync.add(trace);
+			}
+		});
+		tracker.addTraceListener(new TraceListener() {
+			@Override
+			public void trace(String trace) {
+				perFrame.add(trace);
+			}
+		}, Delivery.PER_FRAME);
+		tracker.addTraceListener(new TraceListener() {
+			@Override
+			public void trace(String trace) {
+				try {
+					// A slow listener does not block the producer
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				async.add(trace);
+				delivered.countDown();
+			}
+		}, Delivery.ASYNC);
+
+		tracker.zone("zone1");
+		tracker.zone("zone2");
+		assertEquals(2, sync.size);
+		assertEquals(0, perFrame.size);
+		tracker.update(0);
+		assertEquals(2, perFrame.size);
+		assertEquals(sync.get(1), perFrame.get(1));
+
+		release.countDown();
+		assertTrue(delivered.await(2, TimeUnit.SECONDS));
+		assertEquals(sync.get(0), async.get(0));
+		assertEquals(sync.get(1), async.get(1));
+
+		// Listeners falling behind lose traces, not the tracker
+		for (int i = 0; i < 2000; i++) {
+			tracker.zone("zone" + i);
+		}
+		int undelivered = tracker.getUndeliveredTraces(Delivery.PER_FRAME);
+		assertEquals(2000 - 1024, undelivered);
+		tracker.update(0);
+		assertEquals(2002 - undelivered, perFrame.size);
+		tracker.requestFlush();
+		tracker.update(0);
+		assertEquals(2002, storage.data.split("\\n").length);
+	}
+
+	@Test
+	public void testCloseAsync() {
+		final Array<HttpResponseListener> listeners =
+				new Array<HttpResponseListener>();
+		CsvTracker tracker = new CsvTracker(storage = new TestStorage() {
+			@Override
+			public void send(TraceBuffer data,
+					HttpResponseListener flushListener) {
+				this.data += data.toString();
+				listeners.add(flushListener);
+			}
+		});
+		tracker.start();
+		tracker.zone("zone1");
+		tracker.requestFlush();
+		tracker.update(0);
+		tracker.zone("zone2");
+
+		CloseHandle handle = tracker.closeAsync(10000);
+		assertFalse(handle.isDone());
+		// The next batch goes when the first one is acknowledged
+		assertEquals(1, listeners.size);
+		listeners.get(0).handleHttpResponse(new SimpleHttpResponse("", 204));
+		assertEquals(2, listeners.size);
+		assertFalse(handle.isDone());
+		listeners.get(1).handleHttpResponse(new SimpleHttpResponse("", 204));
+		assertTrue(handle.isDone());
+		assertEquals(0, handle.getLeftovers());
+		assertTrue(storage.data.matches("[0-9]+,zone,zone1\n[0-9]+,zone,zone2\n"));
+	}
+
+	@Test
+	public void testCloseTimeoutSpools() throws Exception {
+		File file = File.createTempFile("spool", "test");
+		file.delete();
+		FileHandle directory = new FileHandle(file);
+
+		final HttpResponseListener[] late = new HttpResponseListener[1];
+		CsvTracker tracker = new CsvTracker(new TestStorage() {
+			@Override
+			public void send(TraceBuffer data,
+					HttpResponseListener flushListener) {
+				// Answers after the close
+				late[0] = flushListener;
+			}
+		});
+		tracker.setSpool(new MappedJournal(directory));
+		tracker.start();
+		tracker.zone("zone1");
+		tracker.requestFlush();
+		tracker.update(0);
+		tracker.zone("zone2");
+		CloseHandle handle = tracker.closeAsync(20);
+		assertTrue(handle.await(5000));
+		assertEquals(2, handle.getLeftovers());
+		assertEquals(0, tracker.getHeldTraces());
+		// The batch is in the spool: the late answer is ignored
+		late[0].handleHttpResponse(new SimpleHttpResponse("", 204));
+		assertEquals(0, tracker.getHeldTraces());
+
+		tracker = new CsvTracker(storage = new TestStorage());
+		tracker.setSpool(new MappedJournal(directory));
+		tracker.start();
+		tracker.close();
+		assertTrue(storage.data.matches("[0-9]+,zone,zone1\n[0-9]+,zone,zone2\n"));
+	}
+
+	@Test
+	public void testMaxRequestSize() {
+		final Array<String> payloads = new Array<String>();
+		final Array<HttpResponseListener> listeners =
+				new Array<HttpResponseListener>();
+		XAPITracker tracker = new XAPITracker(storage = new TestStorage() {
+			@Override
+			public void send(TraceBuffer data,
+					HttpResponseListener flushListener) {
+				assertTrue(data.size() <= maxRequestSize);
+				payloads.add(data.toString());
+				listeners.add(flushListener);
+			}
+		});
+		storage.maxRequestSize = 1000;
+		tracker.setMaxInFlight(2);
+		tracker.start();
+		for (int i = 0; i < 10; i++) {
+			tracker.accessed("zone" + i, Accessible.ZONE);
+		}
+		tracker.requestFlush();
+		tracker.update(0);
+		assertEquals(2, payloads.size);
+
+		// Each one is acknowledged on its own, and the rest follow
+		listeners.get(1).handleHttpResponse(new SimpleHttpResponse("", 204));
+		tracker.update(0);
+		listeners.get(0).handleHttpResponse(new SimpleHttpResponse("", 204));
+		tracker.update(0);
+		for (int i = 2; i < listeners.size; i++) {
+			listeners.get(i).handleHttpResponse(new SimpleHttpResponse("", 204));
+			tracker.update(0);
+		}
+		assertEquals(0, tracker.getHeldTraces());
+
+		int statements = 0;
+		for (String payload : payloads) {
+			JsonValue batch = new JsonReader().parse(payload);
+			assertTrue(batch.isArray());
+			for (JsonValue statement = batch.child; statement != null;
+					statement = statement.next) {
+				assertTrue(statement.get("object").has("id"));
+				statements++;
+			}
+		}
+		assertEquals(10, statements);
+
+		// Too big to ever be accepted
+		storage.maxRequestSize = 100;
+		tracker.accessed("zone", Accessible.ZONE);
+		tracker.requestFlush();
+		tracker.update(0);
+		assertEquals(1, tracker.getDroppedTraces().getCount());
+		assertEquals(0, tracker.getHeldTraces());
+	}
+
+	@Test
+	public void testJournalCheckpointWhileSplitting() {
+		final long[] checkpoint = new long[1];
+		final Array<HttpResponseListener> listeners =
+				new Array<HttpResponseListener>();
+		CsvTracker tracker = new CsvTracker(storage = new TestStorage() {
+			@Override
+			public void send(TraceBuffer data,
+					HttpResponseListener flushListener) {
+				listeners.add(flushListener);
+			}
+		});
+		storage.maxRequestSize = 60;
+		tracker.setMaxInFlight(1);
+		tracker.setJournal(new TraceJournal() {
+
+			private long position;
+
+			@Override
+			public void recover(Array<String> traces, IntArray priorities) {
+			}
+
+			@Override
+			public void append(String trace, int priority) {
+				position++;
+			}
+
+			@Override
+			public long position() {
+				return position;
+			}
+
+			@Override
+			public void checkpoint(long position) {
+				checkpoint[0] = position;
+			}
+
+			@Override
+			public void close() {
+			}
+		});
+		tracker.start();
+		// More traces are added than fit in each request: the queue never
+		// empties, but each acknowledged batch moves the checkpoint
+		for (int i = 0; i < 10; i++) {
+			for (HttpResponseListener listener : listeners) {
+				listener.handleHttpResponse(new SimpleHttpResponse("", 204));
+			}
+			listeners.clear();
+			tracker.zone("zone" + i);
+			tracker.zone("zone" + i);
+			tracker.zone("zone" + i);
+			tracker.requestFlush();
+			tracker.update(0);
+			assertTrue(tracker.getQueuedTraces() > 0);
+		}
+		assertTrue(checkpoint[0] >= 9);
+	}
+
+	@Test
+	public void testDropOldest() {
+		CsvTracker tracker = budgetTracker(OverflowPolicy.DROP_OLDEST);
+		tracker.started("game");
+		tracker.zone("zone1");
+		tracker.zone("zone2");
+		tracker.zone("zone3");
+		assertEquals(3, tracker.getHeldTraces());
+		assertEquals(1, tracker.getDroppedTraces().getCount());
+		assertEquals(1, tracker.getDroppedTraces().getCount(
+				AbstractTracker.PRIORITY_HIGH));
+	}
+
+	@Test
+	public void testDropNewest() {
+		CsvTracker tracker = budgetTracker(OverflowPolicy.DROP_NEWEST);
+		for (int i = 0; i < 10; i++) {
+			tracker.zone("zone" + i);
+		}
+		assertEquals(3, tracker.getHeldTraces());
+		assertEquals(7, tracker.getDroppedTraces().getCount());
+	}
+
+	@Test
+	public void testDropLowPriority() {
+		CsvTracker tracker = budgetTracker(OverflowPolicy.DROP_LOW_PRIORITY);
+		tracker.click(1, 1);
+		tracker.zone("zone1");
+		tracker.click(2, 2);
+		// Drops the clicks first, then the normal traces
+		tracker.zone("zone2");
+		tracker.zone("zone3");
+		assertEquals(2, tracker.getDroppedTraces().getCount(
+				AbstractTracker.PRIORITY_LOW));
+		tracker.zone("zone4");
+		assertEquals(1, tracker.getDroppedTraces().getCount(
+				AbstractTracker.PRIORITY_NORMAL));
+		// High priority traces are never dropped for lower ones
+		tracker.completed("game");
+		tracker.zone("zone5");
+		assertEquals(3, tracker.getHeldTraces());
+		assertEquals(3, tracker.getDroppedTraces().getCount(
+				AbstractTracker.PRIORITY_NORMAL));
+	}
+
+	@Test
+	public void testBlockTimeout() {
+		CsvTracker tracker = budgetTracker(OverflowPolicy.BLOCK);
+		for (int i = 0; i < 4; i++) {
+			tracker.zone("zone" + i);
+		}
+		assertEquals(3, tracker.getHeldTraces());
+		assertEquals(1, tracker.getDroppedTraces().getTimeouts());
+		assertEquals(1, tracker.getDroppedTraces().getCount());
+	}
+
+	@Test
+	public void testBlockOnUpdatingThread() {
+		CsvTracker tracker = budgetTracker(OverflowPolicy.BLOCK);
+		tracker.setBlockTimeout(60000);
+		// Nothing in flight: waiting could only time out
+		tracker.update(0);
+		for (int i = 0; i < 4; i++) {
+			tracker.zone("zone" + i);
+		}
+		assertEquals(3, tracker.getHeldTraces());
+		assertEquals(1, tracker.getDroppedTraces().getCount());
+	}
+
 	@Test
 	public void testXAPIFormat() {
 		XAPITracker tracker = new XAPITracker(storage = new TestStorage());
@@ -55,4 +819,207 @@ public class TrackerTest {
 				&& storage.data.contains("verb")
 				&& storage.data.contains("object"));
 	}
+
+	@Test
+	public void testCustomVocabulary() {
+		XAPITracker tracker = new XAPITracker(storage = new TestStorage());
+		tracker.registerVerb("http://example.com/verbs/jumped",
+				AbstractTracker.PRIORITY_HIGH);
+		tracker.registerActivityType("http://example.com/types/platform");
+		tracker.start();
+		tracker.statement("http://example.com/verbs/jumped", "platform1",
+				"http://example.com/types/platform");
+		try {
+			tracker.statement("http://example.com/verbs/flew", "platform1",
+					"http://example.com/types/platform");
+			fail("Unregistered verbs are rejected");
+		} catch (IllegalArgumentException e) {
+			// Expected
+		}
+		tracker.requestFlush();
+		tracker.update(0);
+
+		JsonValue statement = new JsonReader().parse(storage.data).child;
+		assertEquals("http://example.com/verbs/jumped",
+				statement.get("verb").getString("id"));
+		assertTrue(statement.get("object").getString("id")
+				.endsWith("/platform1"));
+		assertEquals("http://example.com/types/platform", statement
+				.get("object").get("definition").getString("type"));
+		assertTrue(statement.has("timestamp"));
+		assertNull(statement.next);
+	}
+
+	@Test
+	public void testResult() {
+		XAPITracker tracker = new XAPITracker(storage = new TestStorage());
+		tracker.start();
+		tracker.setPosition(1.5f, -2, 0);
+		tracker.setHealth(0.5f);
+		tracker.setVar("coins", 10);
+		tracker.setVar("name", "\"quoted\"\n");
+		tracker.setVar("coins", 20);
+		tracker.completed("level1", Completable.LEVEL, true, false, 0.75f);
+		tracker.accessed("zone1", Accessible.ZONE);
+		tracker.requestFlush();
+		tracker.update(0);
+
+		JsonValue statement = new JsonReader().parse(storage.data).child;
+		JsonValue result = statement.get("result");
+		assertEquals(0.75f, result.get("score").getFloat("raw"), 0);
+		assertTrue(result.getBoolean("success"));
+		assertFalse(result.getBoolean("completion"));
+		JsonValue extensions = result.get("extensions");
+		JsonValue position = extensions.get(Extension.POSITION.toString());
+		assertEquals(1.5f, position.getFloat("x"), 0);
+		assertEquals(-2f, position.getFloat("y"), 0);
+		assertEquals(0.5f,
+				extensions.getFloat(Extension.HEALTH.toString()), 0);
+		assertEquals(20, extensions.getInt("coins"));
+		assertEquals("\"quoted\"\n", extensions.getString("name"));
+		assertEquals(4, extensions.size);
+		// Reset after each statement
+		assertFalse(statement.next.has("result"));
+
+		// The table grows, keeping the order
+		int start = storage.data.length();
+		for (int i = 0; i < 20; i++) {
+			tracker.setVar("var" + i, i);
+		}
+		tracker.accessed("zone2", Accessible.ZONE);
+		tracker.requestFlush();
+		tracker.update(0);
+		extensions = new JsonReader().parse(storage.data.substring(start)).child
+				.get("result").get("extensions");
+		assertEquals(20, extensions.size);
+		for (int i = 0; i < 20; i++) {
+			assertEquals(i, extensions.get(i).asInt());
+			assertEquals("var" + i, extensions.get(i).name);
+		}
+	}
+
+	@Test
+	public void testValuesCapturedWhenAdded() {
+		XAPITracker tracker = new XAPITracker(storage = new TestStorage());
+		tracker.start();
+		// Not strings are written as they are
+		StringBuilder position = new StringBuilder("[1,2]");
+		tracker.setVar("position", position);
+		tracker.setVar("missing", (Object) null);
+		tracker.accessed("zone1", Accessible.ZONE);
+		position.setLength(0);
+		tracker.requestFlush();
+		tracker.update(0);
+		JsonValue extensions = new JsonReader().parse(storage.data).child
+				.get("result").get("extensions");
+		assertEquals(2, extensions.get("position").asIntArray()[1]);
+		assertTrue(extensions.get("missing").isNull());
+
+		CsvTracker csvTracker = new CsvTracker(storage = new TestStorage());
+		csvTracker.start();
+		String[] values = { "a", "b" };
+		csvTracker.trace(values);
+		values[1] = "c";
+		csvTracker.requestFlush();
+		csvTracker.update(0);
+		assertTrue(storage.data.matches("[0-9]+,a,b\\n"));
+	}
+
+	@Test
+	public void testResultsPooled() {
+		XAPITracker tracker = new XAPITracker(storage = new TestStorage());
+		tracker.start();
+		tracker.progressed("level1", Completable.LEVEL, 0.5f);
+		assertEquals(0, tracker.results.getFree());
+		tracker.requestFlush();
+		tracker.update(0);
+		// Given back once formatted...
+		assertEquals(1, tracker.results.getFree());
+		String first = storage.data;
+
+		// ... and taken by the next statement with a result
+		tracker.progressed("level2", Completable.LEVEL, 0.75f);
+		assertEquals(0, tracker.results.getFree());
+		tracker.requestFlush();
+		tracker.update(0);
+		assertEquals(1, tracker.results.getFree());
+		JsonValue result = new JsonReader().parse(
+				storage.data.substring(first.length())).child.get("result");
+		assertEquals(0.75f, result.get("extensions").child.asFloat(), 0);
+		assertEquals(1, result.get("extensions").size);
+	}
+
+	@Test
+	public void testConcurrentStatements() throws Exception {
+		final Array<String> payloads = new Array<String>();
+		final XAPITracker tracker = new XAPITracker(
+				storage = new TestStorage() {
+					@Override
+					public void send(TraceBuffer data,
+							HttpResponseListener flushListener) {
+						payloads.add(data.toString());
+						flushListener.handleHttpResponse(new SimpleHttpResponse(
+								"", 204));
+					}
+				});
+		tracker.start();
+		final int threads = 4;
+		final int statements = 2000;
+		Thread[] producers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int thread = t;
+			producers[t] = new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < statements; i++) {
+						String id = thread + "-" + i;
+						if (i % 2 == 0) {
+							tracker.statement().score(thread)
+									.extension("thread", thread)
+									.extension("i", i).response(id)
+									.send(Verb.PROGRESSED, id,
+											Completable.LEVEL);
+						} else {
+							tracker.completed(id, Completable.LEVEL, true,
+									true, thread);
+						}
+					}
+				}
+			};
+			producers[t].start();
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		while (tracker.getHeldTraces() > 0) {
+			tracker.requestFlush();
+			tracker.update(0);
+		}
+
+		int count = 0;
+		for (String payload : payloads) {
+			for (JsonValue statement = new JsonReader().parse(payload).child;
+					statement != null; statement = statement.next) {
+				String id = statement.get("object").getString("id");
+				String[] parts = id.substring(id.lastIndexOf('/') + 1).split(
+						"-");
+				int thread = Integer.parseInt(parts[0]);
+				JsonValue result = statement.get("result");
+				assertEquals(thread, result.get("score").getFloat("raw"), 0);
+				if (Integer.parseInt(parts[1]) % 2 == 0) {
+					assertEquals(id.substring(id.lastIndexOf('/') + 1),
+							result.getString("response"));
+					JsonValue extensions = result.get("extensions");
+					assertEquals(thread, extensions.getInt("thread"));
+					assertEquals(Integer.parseInt(parts[1]),
+							extensions.getInt("i"));
+				} else {
+					assertFalse(result.has("extensions"));
+					assertTrue(result.getBoolean("success"));
+				}
+				count++;
+			}
+		}
+		assertEquals(threads * statements, count);
+	}
 }
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.codec;
+
+import com.badlogic.gdx.utils.StreamUtils;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+import org.junit.Test;
+
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ContentCodecTest {
+
+	private static final String STATEMENT = "{\"actor\":{\"mbox\":\"mailto:user@example.com\"},"
+			+ "\"verb\":{\"id\":\"https://w3id.org/xapi/seriousgames/verbs/accessed\"},"
+			+ "\"object\":{\"id\":\"http://example.com/game/zone1\",\"definition\":"
+			+ "{\"type\":\"https://w3id.org/xapi/seriousgames/activity-types/zone\"}},"
+			+ "\"timestamp\":\"2015-06-01T10:00:00Z\"}";
+
+	@Test
+	public void testGzip() throws Exception {
+		GzipCodec codec = new GzipCodec();
+		TraceBuffer in = batch(100);
+		TraceBuffer out = new TraceBuffer();
+		// Reused between payloads
+		for (int i = 0; i < 2; i++) {
+			out.reset();
+			codec.encode(in, out);
+			String decoded = new String(
+					StreamUtils.copyStreamToByteArray(new GZIPInputStream(
+							out.asInputStream())), "UTF-8");
+			assertEquals(in.toString(), decoded);
+		}
+		assertTrue(out.size() * 10 < in.size());
+		codec.dispose();
+	}
+
+	@Test
+	public void testDeflateWithDictionary() throws Exception {
+		byte[] dictionary = XAPIDictionary.get();
+		DeflateCodec codec = new DeflateCodec(6, dictionary);
+		TraceBuffer in = batch(1);
+		TraceBuffer out = new TraceBuffer();
+		codec.encode(in, out);
+
+		DeflateCodec plain = new DeflateCodec();
+		TraceBuffer plainOut = new TraceBuffer();
+		plain.encode(in, plainOut);
+		// The dictionary helps the most with small batches
+		assertTrue(out.size() < plainOut.size());
+
+		Inflater inflater = new Inflater();
+		inflater.setInput(out.getBytes(), 0, out.size());
+		byte[] decoded = new byte[in.size()];
+		assertEquals(0, inflater.inflate(decoded));
+		assertTrue(inflater.needsDictionary());
+		inflater.setDictionary(dictionary);
+		assertEquals(in.size(), inflater.inflate(decoded));
+		assertEquals(in.toString(), new String(decoded, "UTF-8"));
+		inflater.end();
+		codec.dispose();
+		plain.dispose();
+	}
+
+	private TraceBuffer batch(int statements) {
+		TraceBuffer buffer = new TraceBuffer();
+		buffer.append('[');
+		for (int i = 0; i < statements; i++) {
+			if (i > 0) {
+				buffer.append(',');
+			}
+			buffer.append(STATEMENT);
+		}
+		buffer.append(']');
+		return buffer;
+	}
+}
@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BinarySerializerTest {
+
+	private static final String STATEMENT = "{\"actor\":{\"mbox\":\"mailto:user@example.com\"},"
+			+ "\"verb\":{\"id\":\"https://w3id.org/xapi/seriousgames/verbs/accessed\"},"
+			+ "\"object\":{\"id\":\"http://example.com/game/zone%d\",\"definition\":"
+			+ "{\"type\":\"https://w3id.org/xapi/seriousgames/activity-types/zone\"}},"
+			+ "\"timestamp\":\"%s\"%s}";
+
+	@Test
+	public void testCsv() {
+		CsvEncoder encoder = new CsvEncoder();
+		String[] traces = new String[] {
+				encoder.begin(1433152800000L).field("zone").field("zone1")
+						.toString(),
+				encoder.begin(1433152800250L).field("click").field(1.5f)
+						.field(-2).field("a, \"quoted\" target").toString(),
+				// Older than the previous one
+				encoder.begin(1433152799000L).field("set").field("vida")
+						.field("\u00f1\u20ac\ud83d\ude00").toString(),
+				encoder.begin(1433152801000L).field("zone").field("zone1")
+						.toString(), "0,zone", "not a csv trace", "" };
+		assertRoundTrip(traces, false);
+	}
+
+	@Test
+	public void testStatements() {
+		String[] traces = new String[] {
+				String.format(STATEMENT, 1, "2015-06-01T10:00:00Z", ""),
+				String.format(STATEMENT, 2, "2016-02-29T23:59:59.999Z",
+						",\"result\":{\"success\":true}"),
+				String.format(STATEMENT, 1, "1969-12-31T23:59:59Z", ""),
+				// Not a valid date: kept as it is
+				String.format(STATEMENT, 3, "2015-02-30T10:00:00Z", ""),
+				"{\"actor\":{}}" };
+		assertRoundTrip(traces, true);
+
+		String[] batch = new String[100];
+		for (int i = 0; i < batch.length; i++) {
+			batch[i] = String.format(STATEMENT, i % 10,
+					"2015-06-01T10:00:" + (10 + i % 50) + "Z", "");
+		}
+		TraceBuffer text = serialize(new JsonArraySerializer(), batch);
+		TraceBuffer binary = assertRoundTrip(batch, true);
+		assertTrue(binary.size() * 20 < text.size());
+	}
+
+	@Test
+	public void testTruncate() {
+		BinarySerializer serializer = new BinarySerializer(false);
+		TraceBuffer out = new TraceBuffer();
+		serializer.begin(out);
+		serializer.write("1000,zone,zone1", out);
+		int size = out.size();
+		serializer.write("5000,zone,zone2", out);
+		// Dropped, as a trace too big for a request
+		out.truncate(size, 1);
+		serializer.write("2000,zone,zone2", out);
+		serializer.end(out);
+
+		TraceBuffer decoded = new TraceBuffer();
+		new BinaryDecoder().decode(out, decoded);
+		assertEquals("1000,zone,zone1\n2000,zone,zone2\n", decoded.toString());
+	}
+
+	@Test
+	public void testConcatenatedPayloads() {
+		BinarySerializer serializer = new BinarySerializer(false);
+		TraceBuffer file = new TraceBuffer();
+		file.append("session,1433152800000\n");
+		serializer.begin(file);
+		serializer.write("1433152800000,zone,zone1", file);
+		serializer.end(file);
+		serializer.begin(file);
+		serializer.write("1433152800001,zone,zone2", file);
+		serializer.end(file);
+
+		TraceBuffer decoded = new TraceBuffer();
+		new BinaryDecoder().decode(file, decoded);
+		assertEquals("session,1433152800000\n1433152800000,zone,zone1\n"
+				+ "1433152800001,zone,zone2\n", decoded.toString());
+	}
+
+	private TraceBuffer assertRoundTrip(String[] traces, boolean jsonArray) {
+		TraceBuffer binary = serialize(new BinarySerializer(jsonArray),
+				traces);
+		TraceBuffer decoded = new TraceBuffer();
+		new BinaryDecoder().decode(binary, decoded);
+		TraceSerializer text = jsonArray ? new JsonArraySerializer()
+				: new CsvSerializer();
+		assertEquals(serialize(text, traces).toString(), decoded.toString());
+		assertEquals(traces.length, decoded.traceCount());
+		return binary;
+	}
+
+	private TraceBuffer serialize(TraceSerializer serializer, String[] traces) {
+		TraceBuffer out = new TraceBuffer();
+		serializer.begin(out);
+		for (String trace : traces) {
+			serializer.write(trace, out);
+		}
+		serializer.end(out);
+		return out;
+	}
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+import com.badlogic.gdx.utils.StringBuilder;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FloatFormatTest {
+
+	private String format(float value) {
+		StringBuilder out = new StringBuilder();
+		FloatFormat.append(out, value);
+		return out.toString();
+	}
+
+	@Test
+	public void testIntegers() {
+		assertEquals("0.0", format(0));
+		assertEquals("100.0", format(100));
+		assertEquals("-7.0", format(-7));
+		assertEquals("9999999.0", format(9999999));
+		// Scientific, as Float.toString
+		assertEquals("1.6777216E7", format(16777216));
+	}
+
+	@Test
+	public void testDecimals() {
+		assertEquals("0.1", format(0.1f));
+		assertEquals("0.3", format(0.3f));
+		assertEquals("123.456", format(123.456f));
+		assertEquals("1234567.8", format(1234567.8f));
+		assertEquals("-0.005", format(-0.005f));
+		assertEquals("2.05", format(2.05f));
+		assertEquals("0.999", format(0.999f));
+	}
+
+	@Test
+	public void testRoundTrip() {
+		for (float f = 0.001f; f < 1e9f; f *= 1.37f) {
+			assertRoundTrip(f);
+		}
+		Random random = new Random(0);
+		for (int i = 0; i < 1000000; i++) {
+			float f = Float.intBitsToFloat(random.nextInt());
+			if (!Float.isNaN(f)) {
+				assertRoundTrip(f);
+			}
+		}
+		for (int bits = Float.floatToIntBits(1e-3f); bits < Float
+				.floatToIntBits(1e7f); bits += 997) {
+			assertRoundTrip(Float.intBitsToFloat(bits));
+		}
+	}
+
+	private void assertRoundTrip(float f) {
+		String formatted = format(f);
+		assertEquals(formatted, Float.floatToIntBits(f),
+				Float.floatToIntBits(Float.parseFloat(formatted)));
+		// Never longer than Float.toString
+		assertTrue(formatted, formatted.length() <= Float.toString(f)
+				.length());
+	}
+
+	@Test
+	public void testSpecialValues() {
+		assertEquals("NaN", format(Float.NaN));
+		assertEquals("Infinity", format(Float.POSITIVE_INFINITY));
+		assertEquals("-Infinity", format(Float.NEGATIVE_INFINITY));
+		assertEquals(Float.toString(1e-5f), format(1e-5f));
+	}
+}
@@ -0,0 +1,73 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+import com.badlogic.gdx.utils.StringBuilder;
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+public class IsoDateFormatterTest {
+
+	@Test
+	public void testUtc() {
+		SimpleDateFormat seconds = format("yyyy-MM-dd'T'HH:mm:ss'Z'");
+		SimpleDateFormat millis = format("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		IsoDateFormatter secondsFormatter = new IsoDateFormatter(false);
+		IsoDateFormatter millisFormatter = new IsoDateFormatter(true);
+		StringBuilder out = new StringBuilder();
+		Random random = new Random(0);
+		long time = 0;
+		for (int i = 0; i < 100000; i++) {
+			// Between 1900 and 2100, mostly close to the previous one
+			time = i % 100 == 0 ? (random.nextLong() >>> 1) % 6311433600000L
+					- 2208988800000L : time
+					+ random.nextInt(i % 10 == 0 ? 100000000 : 300);
+			Date date = new Date(time);
+			out.setLength(0);
+			secondsFormatter.append(out, time);
+			assertEquals(seconds.format(date), out.toString());
+			out.setLength(0);
+			millisFormatter.append(out, time);
+			assertEquals(millis.format(date), out.toString());
+		}
+	}
+
+	@Test
+	public void testParse() {
+		IsoDateFormatter formatter = new IsoDateFormatter(true);
+		StringBuilder out = new StringBuilder();
+		formatter.append(out, 1456790399999L);
+		assertEquals("2016-02-29T23:59:59.999Z", out.toString());
+		assertEquals(1456790399999L,
+				IsoDate.parse(out.toString(), 0, out.length()));
+
+		TraceBuffer buffer = new TraceBuffer();
+		formatter.append(buffer, 1456790399999L);
+		assertEquals(out.toString(), buffer.toString());
+	}
+
+	private SimpleDateFormat format(String pattern) {
+		SimpleDateFormat format = new SimpleDateFormat(pattern);
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		return format;
+	}
+}
@@ -0,0 +1,58 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.format;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TraceBufferTest {
+
+	@Test
+	public void testUTF8() throws Exception {
+		String text = "plain, \u00f1and\u00fa \u20ac \ud83c\udfae";
+		TraceBuffer buffer = new TraceBuffer(4);
+		buffer.append(text);
+		byte[] expected = text.getBytes("UTF-8");
+		assertEquals(expected.length, buffer.size());
+		assertTrue(Arrays.equals(expected,
+				Arrays.copyOf(buffer.getBytes(), buffer.size())));
+		assertEquals(text, buffer.toString());
+	}
+
+	@Test
+	public void testSerializers() {
+		TraceBuffer buffer = new TraceBuffer();
+		TraceSerializer serializer = new JsonArraySerializer();
+		serializer.begin(buffer);
+		serializer.write("{\"a\":1}", buffer);
+		serializer.write("{\"b\":2}", buffer);
+		serializer.end(buffer);
+		assertEquals("[{\"a\":1},{\"b\":2}]", buffer.toString());
+		assertEquals(2, buffer.traceCount());
+
+		buffer.reset();
+		serializer = new CsvSerializer();
+		serializer.begin(buffer);
+		serializer.write("1,zone,a", buffer);
+		serializer.write("2,zone,b", buffer);
+		serializer.end(buffer);
+		assertEquals("1,zone,a\n2,zone,b\n", buffer.toString());
+	}
+}
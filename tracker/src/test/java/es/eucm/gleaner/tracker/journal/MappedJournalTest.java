@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.journal;
+
+import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.Array;
+import com.badlogic.gdx.utils.IntArray;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class MappedJournalTest {
+
+	private FileHandle directory;
+
+	@Before
+	public void setUp() throws IOException {
+		File file = File.createTempFile("journal", "test");
+		file.delete();
+		directory = new FileHandle(file);
+	}
+
+	@Test
+	public void testRecover() {
+		MappedJournal journal = new MappedJournal(directory);
+		for (int i = 0; i < 5; i++) {
+			journal.append("trace\u00f1" + i, i % 3);
+		}
+		journal.checkpoint(2);
+		// Crashes without closing
+
+		journal = new MappedJournal(directory);
+		Array<String> traces = new Array<String>();
+		IntArray priorities = new IntArray();
+		journal.recover(traces, priorities);
+		assertEquals(3, traces.size);
+		for (int i = 0; i < 3; i++) {
+			assertEquals("trace\u00f1" + (i + 2), traces.get(i));
+			assertEquals((i + 2) % 3, priorities.get(i));
+		}
+		assertEquals(5, journal.position());
+
+		// Only the first time
+		traces.clear();
+		journal.recover(traces, priorities);
+		assertEquals(0, traces.size);
+		journal.close();
+	}
+
+	@Test
+	public void testSegments() {
+		MappedJournal journal = new MappedJournal(directory, 64);
+		for (int i = 0; i < 20; i++) {
+			journal.append("trace" + i, 1);
+		}
+		int segments = directory.list(".log").length;
+		assertEquals(true, segments > 1);
+
+		journal.checkpoint(20);
+		assertEquals(1, directory.list(".log").length);
+		journal.close();
+
+		journal = new MappedJournal(directory, 64);
+		Array<String> traces = new Array<String>();
+		journal.recover(traces, new IntArray());
+		assertEquals(0, traces.size);
+		assertEquals(20, journal.position());
+		journal.close();
+	}
+}
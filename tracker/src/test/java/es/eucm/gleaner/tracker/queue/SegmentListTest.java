@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.queue;
+
+import com.badlogic.gdx.utils.Pool;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentListTest {
+
+	private Pool<TraceSegment> pool = new Pool<TraceSegment>() {
+		@Override
+		protected TraceSegment newObject() {
+			return new TraceSegment();
+		}
+	};
+
+	@Test
+	public void testSwapAndPrepend() {
+		SegmentList queue = new SegmentList(pool);
+		SegmentList sent = new SegmentList(pool);
+		int traces = TraceSegment.CAPACITY + 10;
+		for (int i = 0; i < traces; i++) {
+			queue.add("trace" + i, 1);
+		}
+		queue.swap(sent);
+		assertTrue(queue.isEmpty());
+		assertEquals(traces, sent.size());
+
+		queue.add("new", 1);
+		sent.prependTo(queue);
+		assertTrue(sent.isEmpty());
+		assertEquals(traces + 1, queue.size());
+
+		TraceSegment first = queue.first();
+		assertEquals("trace0", first.get(0));
+		assertEquals(TraceSegment.CAPACITY, first.size());
+		TraceSegment last = first.next().next();
+		assertEquals("new", last.get(0));
+		assertNull(last.next());
+	}
+
+	@Test
+	public void testRemoveByPriority() {
+		SegmentList list = new SegmentList(pool);
+		for (int i = 0; i < TraceSegment.CAPACITY * 2; i++) {
+			list.add("trace" + i, i % 10 == 9 ? 0 : 2);
+		}
+		assertEquals(0, list.lowestPriority());
+		assertEquals("trace9", list.removeFirst(0));
+		assertEquals("trace19", list.removeFirst(0));
+		assertNull(list.removeFirst(1));
+		assertEquals(TraceSegment.CAPACITY * 2 - 2, list.size());
+
+		// Empty the first segment
+		assertEquals("trace0", list.removeFirst());
+		for (int i = 0; i < TraceSegment.CAPACITY - 3; i++) {
+			list.removeFirst();
+		}
+		assertEquals(TraceSegment.CAPACITY, list.size());
+		assertEquals("trace256", list.first().get(0));
+		assertEquals(1, pool.getFree());
+		assertEquals(0, list.lowestPriority());
+	}
+
+	@Test
+	public void testClearRecyclesSegments() {
+		SegmentList list = new SegmentList(pool);
+		for (int i = 0; i < TraceSegment.CAPACITY * 3; i++) {
+			list.add("trace", 1);
+		}
+		list.clear();
+		assertTrue(list.isEmpty());
+		assertNull(list.first());
+		assertEquals(3, pool.getFree());
+		list.add("trace", 1);
+		assertEquals(2, pool.getFree());
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.tracker.queue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TraceQueueTest {
+
+	@Test
+	public void testBounded() {
+		TraceQueue<String> queue = new TraceQueue<String>(3);
+		assertEquals(4, queue.capacity());
+		for (int i = 0; i < 4; i++) {
+			assertTrue(queue.offer("trace" + i));
+		}
+		assertFalse(queue.offer("trace4"));
+		assertEquals(4, queue.size());
+		assertEquals("trace0", queue.poll());
+		assertTrue(queue.offer("trace4"));
+
+		ArrayList<String> traces = new ArrayList<String>();
+		assertEquals(4, queue.drainTo(traces));
+		assertEquals("trace4", traces.get(3));
+		assertNull(queue.poll());
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testConcurrentProducers() throws InterruptedException {
+		final int producers = 8;
+		final int tracesPerProducer = 20000;
+		final TraceQueue<Integer> queue = new TraceQueue<Integer>(1024);
+		final CountDownLatch done = new CountDownLatch(producers);
+		for (int p = 0; p < producers; p++) {
+			final int producer = p;
+			new Thread() {
+				public void run() {
+					for (int i = 0; i < tracesPerProducer; i++) {
+						Integer value = producer * tracesPerProducer + i;
+						while (!queue.offer(value)) {
+							Thread.yield();
+						}
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+
+		boolean[] received = new boolean[producers * tracesPerProducer];
+		int[] lastReceived = new int[producers];
+		for (int p = 0; p < producers; p++) {
+			lastReceived[p] = -1;
+		}
+		int count = 0;
+		while (count < received.length) {
+			Integer value = queue.poll();
+			if (value == null) {
+				Thread.yield();
+				continue;
+			}
+			assertFalse(received[value]);
+			received[value] = true;
+			// Traces from the same producer keep their order
+			int producer = value / tracesPerProducer;
+			assertTrue(lastReceived[producer] < value);
+			lastReceived[producer] = value;
+			count++;
+		}
+		done.await();
+		assertTrue(queue.isEmpty());
+	}
+}
@@ -19,13 +19,22 @@ import com.badlogic.gdx.Net.HttpResponse;
 import com.badlogic.gdx.Net.HttpResponseListener;
 import com.badlogic.gdx.backends.lwjgl.LwjglFiles;
 import com.badlogic.gdx.files.FileHandle;
+import com.badlogic.gdx.utils.GdxRuntimeException;
 import es.eucm.gleaner.tracker.CsvTracker;
+import es.eucm.gleaner.tracker.format.TraceBuffer;
+import es.eucm.gleaner.tracker.storage.LocalStorage.SyncPolicy;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -75,7 +84,8 @@ public class LocalStorageTest {
 				}
 
 				@Override
-				public void send(String data, HttpResponseListener flushListener) {
+				public void send(TraceBuffer data,
+						HttpResponseListener flushListener) {
 					super.send(data, new DelayedListener(1000, flushListener));
 				}
 			});
@@ -95,6 +105,206 @@ public class LocalStorageTest {
 		}
 	}
 
+	@Test
+	public void testGroupCommit() throws Exception {
+		File file = File.createTempFile("local-storage", "test");
+		tempFile = files.absolute(file.getAbsolutePath());
+		LocalStorage storage = new LocalStorage(tempFile);
+		storage.setSyncPolicy(SyncPolicy.INTERVAL, 10000);
+		final AtomicInteger acknowledged = new AtomicInteger();
+		HttpResponseListener listener = new HttpResponseListener() {
+			@Override
+			public void handleHttpResponse(HttpResponse httpResponse) {
+				acknowledged.incrementAndGet();
+			}
+
+			@Override
+			public void failed(Throwable t) {
+			}
+
+			@Override
+			public void cancelled() {
+			}
+		};
+		for (int i = 0; i < 3; i++) {
+			storage.send("batch" + i + "\n", listener);
+		}
+		// Written, but not acknowledged until synced
+		Thread.sleep(100);
+		assertEquals(0, acknowledged.get());
+
+		// Closing syncs right away
+		storage.close();
+		assertEquals(3, acknowledged.get());
+		assertEquals("batch0\nbatch1\nbatch2\n", tempFile.readString());
+	}
+
+	@Test
+	public void testFailedWriteAcksWrittenChunks() throws Exception {
+		File file = File.createTempFile("local-storage", "test");
+		// The disk fills up in the middle of the second batch
+		tempFile = new FileHandle(file) {
+			@Override
+			public OutputStream write(boolean append) {
+				return new FilterOutputStream(super.write(append)) {
+
+					private int room = 10;
+
+					@Override
+					public void write(byte[] b, int off, int len)
+							throws IOException {
+						out.write(b, off, Math.min(len, room));
+						if (len > room) {
+							throw new IOException("No space left");
+						}
+						room -= len;
+					}
+				};
+			}
+		};
+		LocalStorage storage = new LocalStorage(tempFile);
+		final AtomicInteger acknowledged = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		HttpResponseListener listener = new HttpResponseListener() {
+			@Override
+			public void handleHttpResponse(HttpResponse httpResponse) {
+				acknowledged.incrementAndGet();
+			}
+
+			@Override
+			public void failed(Throwable t) {
+				failed.incrementAndGet();
+			}
+
+			@Override
+			public void cancelled() {
+			}
+		};
+		// Both in the same group
+		synchronized (storage) {
+			storage.send("batch0\n", listener);
+			storage.send("batch1\n", listener);
+		}
+		storage.close();
+		assertEquals(1, acknowledged.get());
+		assertEquals(1, failed.get());
+		assertEquals("batch0\nbat", tempFile.readString());
+	}
+
+	@Test
+	public void testFailedSyncFailsChunks() throws Exception {
+		// /dev/null takes the writes, but can't be synced
+		FileHandle devNull = new FileHandle(File.createTempFile(
+				"local-storage", "test")) {
+			@Override
+			public OutputStream write(boolean append) {
+				try {
+					return new FileOutputStream("/dev/null");
+				} catch (FileNotFoundException e) {
+					throw new GdxRuntimeException(e);
+				}
+			}
+		};
+		LocalStorage storage = new LocalStorage(devNull);
+		storage.setSyncPolicy(SyncPolicy.ALWAYS, 0);
+		final AtomicInteger acknowledged = new AtomicInteger();
+		final AtomicInteger failed = new AtomicInteger();
+		storage.send("batch0\n", new HttpResponseListener() {
+			@Override
+			public void handleHttpResponse(HttpResponse httpResponse) {
+				acknowledged.incrementAndGet();
+			}
+
+			@Override
+			public void failed(Throwable t) {
+				failed.incrementAndGet();
+			}
+
+			@Override
+			public void cancelled() {
+			}
+		});
+		storage.close();
+		assertEquals(0, acknowledged.get());
+		assertEquals(1, failed.get());
+	}
+
+	@Test
+	public void testFileChannel() throws Exception {
+		File file = File.createTempFile("local-storage", "test");
+		tempFile = files.absolute(file.getAbsolutePath());
+		LocalStorage storage = new LocalStorage(tempFile);
+		storage.setFileChannel(true);
+		final AtomicInteger acknowledged = new AtomicInteger();
+		HttpResponseListener listener = new HttpResponseListener() {
+			@Override
+			public void handleHttpResponse(HttpResponse httpResponse) {
+				acknowledged.incrementAndGet();
+			}
+
+			@Override
+			public void failed(Throwable t) {
+			}
+
+			@Override
+			public void cancelled() {
+			}
+		};
+		// Larger than the direct buffers, so they are drained several times
+		StringBuilder expected = new StringBuilder();
+		for (int i = 0; i < 50000; i++) {
+			TraceBuffer buffer = new TraceBuffer();
+			buffer.append("1433152800000,zone,zone" + i + "\n");
+			expected.append("1433152800000,zone,zone" + i + "\n");
+			storage.send(buffer, listener);
+		}
+		storage.close();
+		assertEquals(50000, acknowledged.get());
+		assertEquals(expected.toString(), tempFile.readString());
+	}
+
+	@Test
+	public void testRotation() throws Exception {
+		File dir = File.createTempFile("local-storage", "test");
+		dir.delete();
+		dir.mkdir();
+		tempFile = files.absolute(dir.getAbsolutePath()).child("traces.csv");
+		LocalStorage storage = new LocalStorage(tempFile);
+		storage.setRotation(10, 0, 2, true);
+		final AtomicInteger acknowledged = new AtomicInteger();
+		HttpResponseListener listener = new HttpResponseListener() {
+			@Override
+			public void handleHttpResponse(HttpResponse httpResponse) {
+				acknowledged.incrementAndGet();
+			}
+
+			@Override
+			public void failed(Throwable t) {
+			}
+
+			@Override
+			public void cancelled() {
+			}
+		};
+		for (int i = 0; i < 5; i++) {
+			storage.send("batch" + i + "\n", listener);
+			// One write per batch
+			while (acknowledged.get() <= i) {
+				Thread.sleep(1);
+			}
+		}
+		storage.close();
+
+		assertEquals("batch4\n", tempFile.readString());
+		FileHandle[] rotated = tempFile.parent().list(".gz");
+		assertEquals(2, rotated.length);
+		assertEquals(3, tempFile.parent().list().length);
+		for (FileHandle file : tempFile.parent().list()) {
+			file.delete();
+		}
+		tempFile.parent().delete();
+	}
+
 	public static class DelayedListener implements HttpResponseListener {
 
 		private long delay;
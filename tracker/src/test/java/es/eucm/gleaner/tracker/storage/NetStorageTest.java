@@ -15,17 +15,30 @@
  */
 package es.eucm.gleaner.tracker.storage;
 
+import com.badlogic.gdx.Application;
+import com.badlogic.gdx.Application.ApplicationType;
+import com.badlogic.gdx.Gdx;
 import com.badlogic.gdx.Net;
 import com.badlogic.gdx.net.ServerSocket;
 import com.badlogic.gdx.net.ServerSocketHints;
 import com.badlogic.gdx.net.Socket;
 import com.badlogic.gdx.net.SocketHints;
+import com.badlogic.gdx.utils.StreamUtils;
 import es.eucm.gleaner.tracker.CsvTracker;
+import es.eucm.gleaner.tracker.codec.GzipCodec;
 import es.eucm.gleaner.tracker.http.SimpleHttpResponse;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.zip.GZIPInputStream;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class NetStorageTest {
@@ -34,9 +47,12 @@ public class NetStorageTest {
 
 	private TestNet net;
 
+	private NetStorage storage;
+
 	@Before
 	public void setUp() {
-		tracker = new CsvTracker(new NetStorage(net = new TestNet(), "", ""), 1);
+		tracker = new CsvTracker(storage = new NetStorage(net = new TestNet(),
+				"", ""), 1);
 	}
 
 	@Test
@@ -50,11 +66,59 @@ public class NetStorageTest {
 		assertTrue(net.data.matches("[0-9]+,trace,test\n"));
 	}
 
+	@Test
+	public void testGzipRequest() throws Exception {
+		storage.setCodec(new GzipCodec());
+		tracker.start();
+		tracker.trace("trace", "test");
+		tracker.requestFlush();
+		tracker.update(0);
+		// Compressed in the background
+		for (int i = 0; i < 100 && net.data.isEmpty(); i++) {
+			Thread.sleep(10);
+		}
+		assertEquals("gzip", net.contentEncoding);
+		assertTrue(net.data.matches("[0-9]+,trace,test\n"));
+		tracker.close();
+	}
+
+	@Test
+	public void testWebGLRequest() {
+		Application app = Gdx.app;
+		Gdx.app = (Application) Proxy.newProxyInstance(
+				Application.class.getClassLoader(),
+				new Class<?>[] { Application.class }, new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) {
+						return method.getName().equals("getType")
+								? ApplicationType.WebGL : null;
+					}
+				});
+		try {
+			// Sent as text, without encoding
+			storage.setCodec(new GzipCodec());
+			tracker.start();
+			tracker.trace("trace", "test");
+			tracker.requestFlush();
+			tracker.update(0);
+			assertNull(net.contentStream);
+			assertNull(net.contentEncoding);
+			assertTrue(net.data.matches("[0-9]+,trace,test\n"));
+		} finally {
+			Gdx.app = app;
+		}
+	}
+
 	public static class TestNet implements Net {
 
 		public boolean started;
 
-		public String data = "";
+		public volatile String data = "";
+
+		public String contentEncoding;
+
+		public InputStream contentStream;
 
 		public void sendHttpRequest(HttpRequest httpRequest,
 				HttpResponseListener httpResponseListener) {
@@ -63,7 +127,24 @@ public class NetStorageTest {
 						"{\"authToken\":\"test\"}", 200));
 				started = true;
 			} else if (httpRequest.getUrl().equals("track/")) {
-				data += httpRequest.getContent();
+				contentEncoding = httpRequest.getHeaders().get(
+						"Content-Encoding");
+				contentStream = httpRequest.getContentStream();
+				if (httpRequest.getContentStream() != null) {
+					try {
+						InputStream content = httpRequest.getContentStream();
+						if ("gzip".equals(contentEncoding)) {
+							content = new GZIPInputStream(content);
+						}
+						data += new String(
+								StreamUtils.copyStreamToByteArray(content),
+								"UTF-8");
+					} catch (IOException e) {
+						throw new RuntimeException(e);
+					}
+				} else {
+					data += httpRequest.getContent();
+				}
 				httpResponseListener.handleHttpResponse(new SimpleHttpResponse(
 						"", 204));
 			}
@@ -19,12 +19,14 @@ import com.badlogic.gdx.Net.HttpResponseListener;
 import es.eucm.gleaner.tracker.AbstractTracker;
 import es.eucm.gleaner.tracker.http.SimpleHttpResponse;
 
-public class TestStorage implements Storage {
+public class TestStorage extends AbstractStorage {
 
 	public boolean started;
 
 	public String data = "";
 
+	public int maxRequestSize;
+
 	public void setTracker(AbstractTracker tracker) {
 	}
 
@@ -39,6 +41,11 @@ public class TestStorage implements Storage {
 		flushListener.handleHttpResponse(new SimpleHttpResponse("", 204));
 	}
 
+	@Override
+	public int getMaxRequestSize() {
+		return maxRequestSize;
+	}
+
     @Override
     public void close() {
     }
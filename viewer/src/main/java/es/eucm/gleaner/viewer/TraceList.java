@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) 2015 eUCM Research Group (e-adventure-dev@e-ucm.es)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package es.eucm.gleaner.viewer;
+
+import com.badlogic.gdx.graphics.Color;
+import com.badlogic.gdx.graphics.g2d.Batch;
+import com.badlogic.gdx.graphics.g2d.BitmapFont;
+import com.badlogic.gdx.math.Rectangle;
+import com.badlogic.gdx.scenes.scene2d.InputEvent;
+import com.badlogic.gdx.scenes.scene2d.ui.Label.LabelStyle;
+import com.badlogic.gdx.scenes.scene2d.ui.Widget;
+import com.badlogic.gdx.scenes.scene2d.utils.ChangeListener.ChangeEvent;
+import com.badlogic.gdx.scenes.scene2d.utils.ClickListener;
+import com.badlogic.gdx.scenes.scene2d.utils.Cullable;
+import com.badlogic.gdx.utils.Align;
+import com.badlogic.gdx.utils.JsonReader;
+import com.badlogic.gdx.utils.JsonWriter.OutputType;
+import com.badlogic.gdx.utils.Pools;
+import com.badlogic.gdx.utils.SerializationException;
+
+/**
+ * List of the most recent traces, one per row, oldest at the top. Keeps a
+ * fixed ring of traces, and only formats and draws the rows inside its
+ * culling area (set by the {@link com.badlogic.gdx.scenes.scene2d.ui.ScrollPane}
+ * containing it). Clicking a row selects it, firing a {@link ChangeEvent}.
+ */
+public class TraceList extends Widget implements Cullable {
+
+	private final BitmapFont font;
+
+	private final Color fontColor;
+
+	private final JsonReader reader = new JsonReader();
+
+	/**
+	 * Ring of traces, from {@link #first}
+	 */
+	private final String[] traces;
+
+	/**
+	 * Rows already formatted, in the same slots as {@link #traces}
+	 */
+	private final String[] rows;
+
+	private int first;
+
+	private int size;
+
+	/**
+	 * Traces ever added, to number them
+	 */
+	private int count;
+
+	/**
+	 * Number of the selected trace, or 0
+	 */
+	private int selected;
+
+	private Rectangle cullingArea;
+
+	/**
+	 * @param capacity
+	 *            traces kept. Older ones are discarded
+	 */
+	public TraceList(LabelStyle style, int capacity) {
+		this.font = style.font;
+		this.fontColor = style.fontColor == null ? Color.WHITE
+				: style.fontColor;
+		traces = new String[capacity];
+		rows = new String[capacity];
+		addListener(new ClickListener() {
+			@Override
+			public void clicked(InputEvent event, float x, float y) {
+				int row = (int) ((getHeight() - y) / getRowHeight());
+				if (row >= 0 && row < size) {
+					select(count - size + row + 1);
+				}
+			}
+		});
+	}
+
+	public void add(String trace) {
+		if (size == traces.length) {
+			traces[first] = null;
+			rows[first] = null;
+			first = (first + 1) % traces.length;
+			size--;
+		}
+		int slot = (first + size) % traces.length;
+		traces[slot] = trace;
+		rows[slot] = null;
+		size++;
+		count++;
+		invalidateHierarchy();
+	}
+
+	private void select(int number) {
+		selected = number;
+		ChangeEvent changeEvent = Pools.obtain(ChangeEvent.class);
+		fire(changeEvent);
+		Pools.free(changeEvent);
+	}
+
+	/**
+	 * @return the selected trace, pretty printed, or null if none is
+	 *         selected or it was discarded
+	 */
+	public String getSelected() {
+		int row = selected - (count - size) - 1;
+		if (selected == 0 || row < 0) {
+			return null;
+		}
+		String trace = traces[(first + row) % traces.length];
+		try {
+			return reader.parse(trace).prettyPrint(OutputType.json, 0);
+		} catch (SerializationException e) {
+			return trace;
+		}
+	}
+
+	/**
+	 * @return the row of the given slot, formatted in a single line
+	 */
+	private String row(int slot, int number) {
+		String row = rows[slot];
+		if (row == null) {
+			String trace = traces[slot];
+			try {
+				trace = reader.parse(trace).prettyPrint(OutputType.minimal,
+						Integer.MAX_VALUE);
+			} catch (SerializationException e) {
+				// Not JSON (e.g., CSV)
+			}
+			rows[slot] = row = number + " " + trace;
+		}
+		return row;
+	}
+
+	public float getRowHeight() {
+		return font.getLineHeight();
+	}
+
+	@Override
+	public float getPrefHeight() {
+		return size * getRowHeight();
+	}
+
+	@Override
+	public void setCullingArea(Rectangle cullingArea) {
+		this.cullingArea = cullingArea;
+	}
+
+	@Override
+	public void draw(Batch batch, float parentAlpha) {
+		validate();
+		float rowHeight = getRowHeight();
+		int start = 0;
+		int end = size;
+		if (cullingArea != null) {
+			float top = getHeight() - cullingArea.y - cullingArea.height;
+			start = Math.max(0, (int) (top / rowHeight));
+			end = Math.min(size, (int) ((getHeight() - cullingArea.y)
+					/ rowHeight) + 1);
+		}
+
+		Color color = getColor();
+		font.setColor(fontColor.r * color.r, fontColor.g * color.g,
+				fontColor.b * color.b, fontColor.a * color.a * parentAlpha);
+		float x = getX();
+		float y = getY() + getHeight();
+		for (int i = start; i < end; i++) {
+			int number = count - size + i + 1;
+			String row = row((first + i) % traces.length, number);
+			font.draw(batch, row, x, y - i * rowHeight, 0, row.length(),
+					getWidth(), Align.left, false, "...");
+		}
+	}
+}
@@ -28,32 +28,39 @@ import com.badlogic.gdx.scenes.scene2d.ui.Skin;
 import com.badlogic.gdx.scenes.scene2d.ui.Stack;
 import com.badlogic.gdx.scenes.scene2d.ui.Table;
 import com.badlogic.gdx.scenes.scene2d.ui.VerticalGroup;
+import com.badlogic.gdx.scenes.scene2d.utils.ChangeListener;
 import com.badlogic.gdx.scenes.scene2d.utils.ClickListener;
 import com.badlogic.gdx.utils.GdxRuntimeException;
-import com.badlogic.gdx.utils.Json;
-import com.badlogic.gdx.utils.JsonValue;
-import com.badlogic.gdx.utils.JsonWriter.OutputType;
 import es.eucm.gleaner.tracker.AbstractTracker;
+import es.eucm.gleaner.tracker.AbstractTracker.Delivery;
 import es.eucm.gleaner.tracker.AbstractTracker.TraceListener;
 
 public class TraceViewer extends Table implements TraceListener {
 
-	private Skin skin;
-
-	private LabelStyle traceStyle;
+	/**
+	 * Traces kept by default
+	 */
+	public static final int CAPACITY = 1000;
 
 	private VerticalGroup feed;
 
-	private VerticalGroup detailed;
+	private TraceList detailed;
 
-	private ScrollPane detailedScroll;
+	private Label selected;
 
-	private int count = 0;
+	private ScrollPane detailedScroll;
 
 	private AbstractTracker tracker;
 
 	public TraceViewer(Skin skin, AbstractTracker tracker) {
-		this.skin = skin;
+		this(skin, tracker, CAPACITY);
+	}
+
+	/**
+	 * @param capacity
+	 *            traces kept in the list. Older ones are discarded
+	 */
+	public TraceViewer(Skin skin, AbstractTracker tracker, int capacity) {
 		this.tracker = tracker;
 
 		ButtonStyle style = skin.get("trace", ButtonStyle.class);
@@ -62,19 +69,37 @@ public class TraceViewer extends Table implements TraceListener {
 					"TraceViewer needs a ButtonStyle named 'trace'");
 		}
 
+		LabelStyle traceStyle = skin.get("trace", LabelStyle.class);
+		if (traceStyle == null) {
+			throw new GdxRuntimeException(
+					"TraceViewer needs a LabelStyle named 'trace'");
+		}
+		LabelStyle xAPIStyle = skin.has("xapi", LabelStyle.class) ? skin.get(
+				"xapi", LabelStyle.class) : traceStyle;
+
 		Stack stack = new Stack();
 
+		final Table detail = new Table();
+		detailed = new TraceList(xAPIStyle, capacity);
+		detailed.addListener(new ChangeListener() {
+			@Override
+			public void changed(ChangeEvent event, Actor actor) {
+				String trace = detailed.getSelected();
+				selected.setText(trace == null ? "" : trace);
+			}
+		});
+		selected = new Label("", xAPIStyle);
+
 		ScrollPaneStyle scrollPaneStyle = new ScrollPaneStyle();
 		scrollPaneStyle.background = skin.getDrawable("blank");
-		detailedScroll = new ScrollPane(detailed = new VerticalGroup(),
-				scrollPaneStyle);
-		detailed.fill();
-		detailed.left();
-
+		detailedScroll = new ScrollPane(detailed, scrollPaneStyle);
 		detailedScroll.setScrollingDisabled(true, false);
+		detail.add(detailedScroll).expand().fill();
+		detail.row();
+		detail.add(selected).expandX().fillX().left();
 
-		stack.addActor(detailedScroll);
-		detailedScroll.setVisible(false);
+		stack.addActor(detail);
+		detail.setVisible(false);
 
 		Button showDetail = new Button(style);
 		showDetail.addListener(new ClickListener() {
@@ -84,7 +109,7 @@ public class TraceViewer extends Table implements TraceListener {
 			@Override
 			public void clicked(InputEvent event, float x, float y) {
 				visible = !visible;
-				detailedScroll.setVisible(visible);
+				detail.setVisible(visible);
 				feed.setVisible(!visible);
 			}
 		});
@@ -99,13 +124,7 @@ public class TraceViewer extends Table implements TraceListener {
 		add(stack).expand().right().top();
 		row();
 
-		traceStyle = skin.get("trace", LabelStyle.class);
-		if (traceStyle == null) {
-			throw new GdxRuntimeException(
-					"TraceViewer needs a LabelStyle named 'trace'");
-		}
-
-		tracker.addTraceListener(this);
+		tracker.addTraceListener(this, Delivery.PER_FRAME);
 	}
 
 	@Override
@@ -113,23 +132,6 @@ public class TraceViewer extends Table implements TraceListener {
 		if (!tracker.isReady()) {
 			return;
 		}
-
-		Table xAPI = new Table();
-		xAPI.add(new Label("[#000000]" + ++count + "[]", traceStyle));
-		xAPI.row();
-		xAPI.add();
-
-		LabelStyle style = skin.get("xapi", LabelStyle.class);
-		if (style == null) {
-			style = traceStyle;
-		}
-
-		JsonValue statement = new Json().fromJson(null, trace);
-		System.out.println(statement.prettyPrint(OutputType.json, 0));
-		xAPI.add(new Label(statement.prettyPrint(OutputType.json, 0), style))
-				.expandX().fillX();
-
-		detailed.addActor(xAPI);
-
+		detailed.add(trace);
 	}
 }